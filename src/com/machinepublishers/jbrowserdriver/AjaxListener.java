@@ -17,51 +17,201 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import javafx.application.Platform;
 
 class AjaxListener implements Runnable {
   private static final long MAX_WAIT_DEFAULT = 15000;
-  private static final int IDLE_COUNT_TARGET = 3;
+  private static final long SCRIPT_INTERVAL = 50;
+  private static final AtomicLong loads = new AtomicLong();
+  private static final AtomicLong timeouts = new AtomicLong();
+  private static final AtomicLong settleMS = new AtomicLong();
+  private static final AtomicLong maxSettleMS = new AtomicLong();
+  private static final AtomicLong resourceEvents = new AtomicLong();
+  private final ContextItem contextItem;
+  private final Session session;
   private final AtomicBoolean started;
   private final AtomicInteger newStatusCode;
   private final StatusCode statusCode;
-  private final Map<String, Long> resources;
   private final AtomicLong timeoutMS;
+  private final Map<Resource, Long> resources = new ConcurrentHashMap<Resource, Long>();
+  private final PriorityBlockingQueue<Pending> pending = new PriorityBlockingQueue<Pending>(
+      11, Comparator.comparingLong((Pending p) -> p.start));
+  private final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+  private final AtomicLong lastEvent = new AtomicLong();
+  private final AtomicReference<Readiness> readiness = new AtomicReference<Readiness>(Readiness.ajaxIdle());
+  private final AtomicInteger documentStatusCode = new AtomicInteger();
+  private final AtomicBoolean mainFrameFinished = new AtomicBoolean();
 
-  AjaxListener(final AtomicBoolean started, final AtomicInteger newStatusCode,
-      final StatusCode statusCode,
-      final Map<String, Long> resources, final AtomicLong timeoutMS) {
+  /**
+   * A resource loading in a frame. Cheaper to hash and compare than a string built from both.
+   */
+  static final class Resource {
+    private final long frame;
+    private final String url;
+    private final int hash;
+
+    Resource(long frame, String url) {
+      this.frame = frame;
+      this.url = url;
+      this.hash = 31 * Long.hashCode(frame) + Objects.hashCode(url);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Resource)) {
+        return false;
+      }
+      Resource other = (Resource) obj;
+      return hash == other.hash && frame == other.frame && Objects.equals(url, other.url);
+    }
+  }
+
+  private static class Pending {
+    private final Resource key;
+    private final long start;
+
+    Pending(Resource key, long start) {
+      this.key = key;
+      this.start = start;
+    }
+  }
+
+  AjaxListener(final ContextItem contextItem, final Session session, final AtomicBoolean started,
+      final AtomicInteger newStatusCode, final StatusCode statusCode, final AtomicLong timeoutMS) {
+    this.contextItem = contextItem;
+    this.session = session;
     this.started = started;
     this.newStatusCode = newStatusCode;
     this.statusCode = statusCode;
-    this.resources = resources;
     this.timeoutMS = timeoutMS;
   }
 
+  static PageLoadStats stats() {
+    long loadCount = loads.get();
+    return new PageLoadStats(loadCount, timeouts.get(),
+        loadCount == 0 ? 0 : settleMS.get() / loadCount, maxSettleMS.get(), resourceEvents.get());
+  }
+
+  private void wake() {
+    Thread listener = thread.get();
+    if (listener != null) {
+      LockSupport.unpark(listener);
+    }
+  }
+
+  void resourceStarted(Resource key) {
+    long now = System.currentTimeMillis();
+    resourceEvents.incrementAndGet();
+    resources.put(key, now);
+    pending.add(new Pending(key, now));
+    lastEvent.set(now);
+    if (readiness.get().script() != null) {
+      wake();
+    }
+  }
+
+  void resourceFinished(Resource key) {
+    resourceEvents.incrementAndGet();
+    if (resources.remove(key) != null) {
+      lastEvent.set(System.currentTimeMillis());
+      //otherwise the listener is already waiting for the right deadline
+      if (resources.isEmpty() || readiness.get().script() != null) {
+        wake();
+      }
+    }
+  }
+
+  void documentAvailable(int documentStatusCode) {
+    this.documentStatusCode.compareAndSet(0, documentStatusCode);
+    wake();
+  }
+
+  void mainFrameFinished() {
+    mainFrameFinished.set(true);
+    wake();
+  }
+
+  /**
+   * Caller must hold the lock on the status code.
+   */
+  void reset(Readiness readiness) {
+    this.readiness.set(readiness == null ? Readiness.ajaxIdle() : readiness);
+    documentStatusCode.set(0);
+    mainFrameFinished.set(false);
+    clear();
+  }
+
+  /**
+   * Caller must hold the lock on the status code.
+   */
+  void clear() {
+    resources.clear();
+    pending.clear();
+  }
+
+  private boolean scriptReady(String script) {
+    try {
+      return AppThread.exec(() -> Boolean.TRUE.equals(
+          contextItem.engine.get().executeScript("!!(" + script + ");")));
+    } catch (Throwable t) {
+      return false;
+    }
+  }
+
+  private void expire(long now, long resourceTimeout) {
+    Pending next;
+    while ((next = pending.poll()) != null) {
+      if (now - next.start <= resourceTimeout) {
+        pending.add(next);
+        break;
+      }
+      resources.remove(next.key, next.start);
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void run() {
+    thread.set(Thread.currentThread());
     while (true) {
       synchronized (statusCode) {
         while (statusCode.get() != 0) {
           try {
             statusCode.wait();
-          } catch (InterruptedException e) {}
+          } catch (InterruptedException e) {
+            return;
+          }
         }
       }
-      int size = 0;
-      final long start = System.currentTimeMillis();
-      long time = start;
-      final Settings settings = SettingsManager.settings();
+      final Settings settings = session.settings();
       final AtomicBoolean done = new AtomicBoolean();
       Platform.runLater(() -> {
         synchronized (done) {
@@ -73,42 +223,56 @@ class AjaxListener implements Runnable {
         while (!done.get()) {
           try {
             done.wait();
-          } catch (InterruptedException e) {}
+          } catch (InterruptedException e) {
+            return;
+          }
         }
       }
+      final long start = System.currentTimeMillis();
+      final Readiness readiness;
+      synchronized (statusCode) {
+        if (lastEvent.get() < start) {
+          lastEvent.set(start);
+        }
+        readiness = this.readiness.get();
+      }
       if (settings != null) {
-        final long sleepMS = Math.max(settings.ajaxWait() / IDLE_COUNT_TARGET, 0);
-        int idleCount = 0;
-        int idleCountTarget = sleepMS == 0 ? 1 : IDLE_COUNT_TARGET;
-        while (time - start < (timeoutMS.get() <= 0 ? MAX_WAIT_DEFAULT : timeoutMS.get())) {
-          try {
-            Thread.sleep(sleepMS);
-          } catch (InterruptedException e) {
-            return;
+        final long maxWait = timeoutMS.get() <= 0 ? MAX_WAIT_DEFAULT : timeoutMS.get();
+        final long quietMS = readiness.idleMS() < 0 ? Math.max(settings.ajaxWait(), 0) : readiness.idleMS();
+        final long resourceTimeout = settings.ajaxResourceTimeout();
+        while (true) {
+          if (readiness.script() != null && documentStatusCode.get() != 0 && scriptReady(readiness.script())) {
+            break;
           }
-          time = System.currentTimeMillis();
-          synchronized (statusCode) {
-            if (Thread.interrupted()) {
-              return;
-            }
-            final Set<String> remove = new HashSet<String>();
-            for (Map.Entry<String, Long> entry : resources.entrySet()) {
-              if (time - entry.getValue() > settings.ajaxResourceTimeout()) {
-                remove.add(entry.getKey());
-              }
-            }
-            for (String key : remove) {
-              resources.remove(key);
-            }
-            size = resources.size();
+          long now = System.currentTimeMillis();
+          expire(now, resourceTimeout);
+          long deadline = start + maxWait;
+          if (now >= deadline) {
+            timeouts.incrementAndGet();
+            break;
+          }
+          if (readiness.waitsForDocument() && documentStatusCode.get() != 0
+              || readiness.waitsForMainFrame() && mainFrameFinished.get()) {
+            break;
           }
-          if (size == 0) {
-            ++idleCount;
+          if (readiness.script() != null) {
+            deadline = Math.min(deadline, now + SCRIPT_INTERVAL);
+          } else if (readiness.waitsForNetwork() && resources.isEmpty()) {
+            //re-armed each time a resource starts or finishes
+            long quietDeadline = lastEvent.get() + quietMS;
+            if (now >= quietDeadline) {
+              break;
+            }
+            deadline = Math.min(deadline, quietDeadline);
           } else {
-            idleCount = 0;
+            Pending next = pending.peek();
+            if (next != null) {
+              deadline = Math.min(deadline, next.start + resourceTimeout + 1);
+            }
           }
-          if (idleCount == idleCountTarget) {
-            break;
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.max(1, deadline - now)));
+          if (Thread.currentThread().isInterrupted()) {
+            return;
           }
         }
       }
@@ -116,10 +280,20 @@ class AjaxListener implements Runnable {
         if (Thread.interrupted()) {
           return;
         }
+        long settled = System.currentTimeMillis() - lastEvent.get();
+        loads.incrementAndGet();
+        settleMS.addAndGet(settled);
+        maxSettleMS.accumulateAndGet(settled, Math::max);
         int newStatusCodeVal = newStatusCode.getAndSet(0);
+        if (newStatusCodeVal <= 0 && !readiness.waitsForNetwork()) {
+          newStatusCodeVal = documentStatusCode.get();
+        }
         newStatusCodeVal = newStatusCodeVal <= 0 ? (started.get() ? 0 : 200) : newStatusCodeVal;
-        resources.clear();
-        StatusMonitor.instance().clear();
+        clear();
+        if (readiness.waitsForNetwork()) {
+          //otherwise subresources may still be loading, and they're cleared on the next navigation instead
+          contextItem.statusMonitor.clear();
+        }
         statusCode.set(newStatusCodeVal);
         statusCode.notifyAll();
       }
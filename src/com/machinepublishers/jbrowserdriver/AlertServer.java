@@ -46,7 +46,7 @@ class AlertServer extends RemoteObject implements AlertRemote,
   }
 
   void listen(ContextItem item) {
-    if (!SettingsManager.settings().ignoreDialogs()) {
+    if (!item.context.get().session.settings().ignoreDialogs()) {
       item.engine.get().setOnAlert(alertHandler);
       item.engine.get().setConfirmHandler(confirmHandler);
       item.engine.get().setPromptHandler(promptHandler);
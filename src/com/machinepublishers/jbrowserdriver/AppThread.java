@@ -19,6 +19,8 @@ package com.machinepublishers.jbrowserdriver;
 
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.openqa.selenium.TimeoutException;
@@ -29,39 +31,49 @@ import javafx.application.Platform;
 
 class AppThread {
   private static final Random rand = new Random();
+  private static final AtomicInteger parkedNow = new AtomicInteger();
+  private static final AtomicLong parkedTotal = new AtomicLong();
+  private static final AtomicLong wakeups = new AtomicLong();
+  private static final AtomicLong wakeupNanos = new AtomicLong();
+  private static final AtomicLong maxWakeupNanos = new AtomicLong();
 
   static interface Sync<T> {
     T perform();
   }
 
   private static class Runner<T> implements Runnable {
-    private static final int MAX_DELAY = 500;
     private final Sync<T> action;
     private final StatusCode statusCode;
     private final AtomicBoolean done;
     private final AtomicReference<T> returned;
-    private final int delay;
     private final AtomicBoolean cancel;
     private final AtomicReference<Throwable> failure;
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private final AtomicLong released = new AtomicLong();
+    private final Runnable release = () -> {
+      parked.set(false);
+      parkedNow.decrementAndGet();
+      released.set(System.nanoTime());
+      Platform.runLater(this);
+    };
 
     public Runner(Sync<T> action, StatusCode statusCode) {
       this.action = action;
       this.statusCode = statusCode;
       this.done = new AtomicBoolean();
       this.returned = new AtomicReference<T>();
-      this.delay = 1;
       this.cancel = new AtomicBoolean();
       this.failure = new AtomicReference<Throwable>();
     }
 
-    public Runner(Runner other) {
-      this.action = other.action;
-      this.statusCode = other.statusCode;
-      this.done = other.done;
-      this.returned = other.returned;
-      this.delay = Math.min(MAX_DELAY, other.delay * 2);
-      this.cancel = other.cancel;
-      this.failure = other.failure;
+    void cancel() {
+      cancel.set(true);
+      synchronized (statusCode) {
+        if (parked.compareAndSet(true, false)) {
+          statusCode.unpark(release);
+          parkedNow.decrementAndGet();
+        }
+      }
     }
 
     /**
@@ -69,16 +81,20 @@ class AppThread {
      */
     @Override
     public void run() {
+      long releasedAt = released.getAndSet(0);
+      if (releasedAt != 0) {
+        long elapsed = System.nanoTime() - releasedAt;
+        wakeups.incrementAndGet();
+        wakeupNanos.addAndGet(elapsed);
+        maxWakeupNanos.accumulateAndGet(elapsed, Math::max);
+      }
       if (!cancel.get()) {
         synchronized (statusCode) {
-          if (statusCode.get() == 0) {
-            final Runner newRunner = new Runner(this);
-            new Thread(() -> {
-              try {
-                Thread.sleep(delay);
-              } catch (InterruptedException e) {}
-              Platform.runLater(newRunner);
-            }).start();
+          if (statusCode.park(release)) {
+            //runs again once HttpListener or AjaxListener sets a final status code
+            parked.set(true);
+            parkedNow.incrementAndGet();
+            parkedTotal.incrementAndGet();
           } else {
             if (statusCode.get() > 299) {
               LogsServer.instance().trace("Performing browser action, but HTTP status is " + statusCode.get() + ".");
@@ -110,6 +126,12 @@ class AppThread {
     });
   }
 
+  static AppThreadStats stats() {
+    long wakeupCount = wakeups.get();
+    return new AppThreadStats(parkedNow.get(), parkedTotal.get(), wakeupCount,
+        wakeupCount == 0 ? 0 : wakeupNanos.get() / wakeupCount / 1000, maxWakeupNanos.get() / 1000);
+  }
+
   static void handleExecutionException(Object obj) {
     if (obj instanceof UncheckedExecutionException) {
       throw (UncheckedExecutionException) obj;
@@ -160,7 +182,7 @@ class AppThread {
             LogsServer.instance().exception(e);
           }
           if (!runner.done.get()) {
-            runner.cancel.set(true);
+            runner.cancel();
             throw new TimeoutException("Timeout of " + timeout + "ms reached.");
           }
         }
@@ -0,0 +1,91 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+
+/**
+ * Point-in-time statistics for browser actions in a child browser process which were held until a
+ * pending page load completed.
+ * 
+ * @see JBrowserDriver#appThreadStats()
+ */
+public class AppThreadStats implements Serializable {
+  private final int parked;
+  private final long parkedTotal;
+  private final long wakeups;
+  private final long averageWakeupMicros;
+  private final long maxWakeupMicros;
+
+  AppThreadStats(int parked, long parkedTotal, long wakeups, long averageWakeupMicros, long maxWakeupMicros) {
+    this.parked = parked;
+    this.parkedTotal = parkedTotal;
+    this.wakeups = wakeups;
+    this.averageWakeupMicros = averageWakeupMicros;
+    this.maxWakeupMicros = maxWakeupMicros;
+  }
+
+  /**
+   * @return Number of actions currently waiting for a page load to complete.
+   */
+  public int parked() {
+    return parked;
+  }
+
+  /**
+   * @return Number of times an action had to wait for a page load, since the process started.
+   */
+  public long parkedTotal() {
+    return parkedTotal;
+  }
+
+  /**
+   * @return Number of waiting actions which were released because the page load completed.
+   */
+  public long wakeups() {
+    return wakeups;
+  }
+
+  /**
+   * @return Average microseconds from a page load completing until a waiting action began running.
+   */
+  public long averageWakeupMicros() {
+    return averageWakeupMicros;
+  }
+
+  /**
+   * @return Longest microseconds from a page load completing until a waiting action began running.
+   */
+  public long maxWakeupMicros() {
+    return maxWakeupMicros;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder()
+        .append("parked=").append(parked)
+        .append(", parkedTotal=").append(parkedTotal)
+        .append(", wakeups=").append(wakeups)
+        .append(", averageWakeupMicros=").append(averageWakeupMicros)
+        .append(", maxWakeupMicros=").append(maxWakeupMicros)
+        .toString();
+  }
+}
@@ -0,0 +1,357 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.client.cache.HttpCacheEntry;
+
+/**
+ * Cache storage hosted by the parent process and shared by the browser processes on the host that use the same
+ * cache settings, over a loopback socket. Entries are held in one memory pool in front of one cache directory, instead of each
+ * process keeping its own.
+ * <p>
+ * Concurrent misses for the same key are coalesced: the first process to miss is told it has claimed the key,
+ * and others missing it wait until the claimant stores the response, releases the claim, or the claim expires.
+ * Updates are optimistic, succeeding only if the entry hasn't changed since it was read. Versions come from one
+ * counter, and are only tracked for keys held in memory; a key that isn't has the version the counter had when
+ * a tracked version was last dropped, so an update based on a read from before then fails.
+ * <p>
+ * Each connection must first present the daemon's random token, which browser processes are given in their
+ * environment, so that other users and processes on the host can't read or alter cached responses.
+ * 
+ * @see Settings.Builder#cacheDaemon(boolean)
+ */
+class CacheDaemon {
+  static final String PORT_PROPERTY = "jbd.cachedaemonport";
+  static final String TOKEN_ENV = "JBD_CACHE_DAEMON_TOKEN";
+  static final byte GET = 1;
+  static final byte PUT = 2;
+  static final byte PUT_IF = 3;
+  static final byte REMOVE = 4;
+  static final byte RELEASE = 5;
+  static final byte MISS = 0;
+  static final byte HIT = 1;
+  static final byte CLAIMED = 2;
+  static final byte CONFLICT = 0;
+  static final byte OK = 1;
+  private static final long CLAIM_TIMEOUT = 30 * 1000;
+  private static final Map<String, CacheDaemon> instances = new HashMap<String, CacheDaemon>();
+
+  private final ServerSocket serverSocket;
+  private final String token;
+  private final HttpCache disk;
+  private final MemoryCache memory;
+  private final Logger logger;
+  private final Map<String, Long> versions = new ConcurrentHashMap<String, Long>();
+  private final AtomicLong lastVersion = new AtomicLong();
+  private final AtomicLong untrackedVersion = new AtomicLong();
+  private final Queue<String> evicted = new ConcurrentLinkedQueue<String>();
+  private final Map<String, Claim> claims = new ConcurrentHashMap<String, Claim>();
+  private final Map<String, Claim> writers = new ConcurrentHashMap<String, Claim>();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  private static class Claim {
+    private final long expires = System.currentTimeMillis() + CLAIM_TIMEOUT;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    boolean expired() {
+      return released.get() || System.currentTimeMillis() > expires;
+    }
+
+    void release() {
+      synchronized (this) {
+        released.set(true);
+        notifyAll();
+      }
+    }
+
+    void await() throws InterruptedException {
+      synchronized (this) {
+        for (long wait; !released.get() && (wait = expires - System.currentTimeMillis()) > 0;) {
+          wait(wait);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts a daemon the first time it's needed for these cache settings. Settings with a different cache
+   * directory, size or age limit, or memory pool get a daemon of their own.
+   */
+  static CacheDaemon instance(Settings settings) throws IOException {
+    String key = (settings.cacheDir() == null ? "" : settings.cacheDir().getCanonicalPath())
+        + "|" + settings.cacheDirSize() + "|" + settings.cacheDirAge() + "|" + settings.cacheMemory();
+    synchronized (instances) {
+      CacheDaemon instance = instances.get(key);
+      if (instance == null) {
+        instance = new CacheDaemon(settings);
+        instances.put(key, instance);
+      }
+      return instance;
+    }
+  }
+
+  /**
+   * @return Port the daemon listens on
+   */
+  int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * @return Token connections must present
+   */
+  String token() {
+    return token;
+  }
+
+  private CacheDaemon(Settings settings) throws IOException {
+    logger = settings.logger();
+    byte[] tokenBytes = new byte[32];
+    new SecureRandom().nextBytes(tokenBytes);
+    token = Hex.encodeHexString(tokenBytes);
+    File cacheDir = settings.cacheDir();
+    if (cacheDir == null) {
+      cacheDir = Files.createTempDirectory("jbd_webcache_").toFile();
+      Runtime.getRuntime().addShutdownHook(new FileRemover(cacheDir));
+    } else {
+      cacheDir.mkdirs();
+    }
+    disk = HttpCache.open(cacheDir, settings.cacheDirSize(), settings.cacheDirAge(), logger);
+    memory = new MemoryCache(disk, Math.max(0, settings.cacheMemory()), logger, key -> evicted.add(key));
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    Thread thread = new Thread(() -> {
+      while (true) {
+        try {
+          final Socket socket = serverSocket.accept();
+          socket.setTcpNoDelay(true);
+          Thread reader = new Thread(() -> serve(socket), "JBrowserDriver cache daemon connection");
+          reader.setDaemon(true);
+          reader.start();
+        } catch (Throwable t) {
+          if (serverSocket.isClosed()) {
+            return;
+          }
+          log(Level.WARNING, "Cache daemon could not accept a connection.", t);
+        }
+      }
+    }, "JBrowserDriver cache daemon");
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      memory.log();
+      if (logger != null) {
+        logger.log(Level.FINE, "Cache daemon: coalesced=" + coalesced.get());
+      }
+      Util.close(serverSocket);
+      disk.close();
+    }));
+  }
+
+  private void serve(Socket socket) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+      if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+          FrameCodec.readString(in).getBytes(StandardCharsets.UTF_8))) {
+        log(Level.WARNING, "Cache daemon rejected a connection with the wrong token.", null);
+        return;
+      }
+      while (true) {
+        final byte op;
+        try {
+          op = in.readByte();
+        } catch (EOFException e) {
+          return;
+        }
+        final String key = FrameCodec.readString(in);
+        if (op == GET) {
+          get(key, in.readBoolean(), out);
+        } else if (op == PUT) {
+          byte[] record = read(in);
+          update(key, -1, HttpCache.decode(record, key));
+          out.writeByte(OK);
+        } else if (op == PUT_IF) {
+          long version = in.readLong();
+          byte[] record = read(in);
+          out.writeByte(update(key, version, HttpCache.decode(record, key)) ? OK : CONFLICT);
+        } else if (op == REMOVE) {
+          update(key, -1, null);
+          out.writeByte(OK);
+        } else if (op == RELEASE) {
+          release(key);
+          out.writeByte(OK);
+        } else {
+          throw new IOException("Unknown cache operation: " + op);
+        }
+        out.flush();
+      }
+    } catch (Throwable t) {
+      if (!socket.isClosed()) {
+        log(Level.WARNING, "Cache daemon connection failed.", t);
+      }
+    } finally {
+      Util.close(socket);
+    }
+  }
+
+  private void get(String key, boolean coalesce, DataOutputStream out) throws IOException, InterruptedException {
+    long version = version(key);
+    HttpCacheEntry entry = memory.getEntry(key);
+    prune();
+    if (entry == null && coalesce) {
+      Claim claim = new Claim();
+      Claim cur = claims.putIfAbsent(key, claim);
+      if (cur != null && cur.expired() && claims.replace(key, cur, claim)) {
+        cur = null;
+      }
+      if (cur == null) {
+        out.writeByte(CLAIMED);
+        out.writeLong(version);
+        return;
+      }
+      coalesced.incrementAndGet();
+      cur.await();
+      version = version(key);
+      entry = memory.getEntry(key);
+      prune();
+    }
+    if (entry == null) {
+      out.writeByte(MISS);
+      out.writeLong(version);
+    } else {
+      byte[] record = HttpCache.encode(key, entry);
+      out.writeByte(HIT);
+      out.writeLong(version);
+      out.writeInt(record.length);
+      out.write(record);
+    }
+  }
+
+  /**
+   * Stores or removes an entry and releases any claim on it.
+   * 
+   * @param version
+   *          Version the entry must still have for the update to succeed, or -1 to update it regardless
+   * @param entry
+   *          The new entry, or null to remove it
+   * @return Whether the entry was updated
+   */
+  private boolean update(String key, long version, HttpCacheEntry entry) throws IOException, InterruptedException {
+    //updates of a key are serialized by a claim on writing it, so the entry can be stored without holding
+    //the version map's lock, and its version changes only once it's stored: a concurrent read that sees
+    //the old version along with the new entry just makes a conditional update based on it fail
+    final Claim claim = new Claim();
+    for (Claim cur; (cur = writers.putIfAbsent(key, claim)) != null;) {
+      if (cur.expired()) {
+        writers.remove(key, cur);
+      } else {
+        cur.await();
+      }
+    }
+    try {
+      if (version != -1 && version != version(key)) {
+        return false;
+      }
+      if (entry == null) {
+        memory.removeEntry(key);
+      } else {
+        memory.putEntry(key, entry);
+      }
+      versions.compute(key, (k, cur) -> {
+        long nextVersion = lastVersion.incrementAndGet();
+        if (entry == null) {
+          untrackedVersion.accumulateAndGet(nextVersion, Math::max);
+          return null;
+        }
+        return nextVersion;
+      });
+    } finally {
+      writers.remove(key, claim);
+      claim.release();
+      prune();
+    }
+    release(key);
+    return true;
+  }
+
+  private long version(String key) {
+    //read first, so that if the key's version is dropped meanwhile, the version returned is older than the new one
+    long untracked = untrackedVersion.get();
+    Long version = versions.get(key);
+    return version == null ? untracked : version;
+  }
+
+  /**
+   * Stops tracking versions of keys evicted from memory.
+   */
+  private void prune() {
+    for (String key; (key = evicted.poll()) != null;) {
+      Long version = versions.get(key);
+      if (version != null) {
+        untrackedVersion.accumulateAndGet(version, Math::max);
+        versions.remove(key, version);
+      }
+    }
+  }
+
+  private void release(String key) {
+    Claim claim = claims.remove(key);
+    if (claim != null) {
+      claim.release();
+    }
+  }
+
+  private static byte[] read(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private void log(Level level, String message, Throwable t) {
+    if (logger != null) {
+      logger.log(level, message, t);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.HttpCacheUpdateException;
+
+/**
+ * Cache storage backed by the parent's {@link CacheDaemon}. Connections are pooled so concurrent requests
+ * don't wait on each other. Keys this process is told it has claimed on a miss are released once the request
+ * that missed completes, whether or not its response was cacheable.
+ */
+class CacheDaemonClient implements HttpCacheStorage {
+  private static final int UPDATE_ATTEMPTS = 10;
+
+  private final int port;
+  private final String token;
+  private final String partition;
+  private final Queue<Connection> idle = new ConcurrentLinkedQueue<Connection>();
+  private final ThreadLocal<Set<String>> claimed = ThreadLocal.withInitial(() -> new HashSet<String>());
+
+  private static class Connection {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    Connection(int port, String token) throws IOException {
+      socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      socket.setTcpNoDelay(true);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      //sent along with the first request
+      FrameCodec.writeString(out, token);
+    }
+  }
+
+  private static class Result {
+    private final long version;
+    private final HttpCacheEntry entry;
+
+    Result(long version, HttpCacheEntry entry) {
+      this.version = version;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * @param token
+   *          Token the daemon requires of each connection
+   * @param partition
+   *          Prefix keeping this client's keys apart from those of other sessions, or null
+   */
+  CacheDaemonClient(int port, String token, String partition) {
+    this.port = port;
+    this.token = token;
+    //keys are URLs, which can't contain spaces
+    this.partition = partition == null ? "" : partition + " ";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public HttpCacheEntry getEntry(String key) throws IOException {
+    key = partition + key;
+    //the caching client looks a key up several times while handling one miss, so once this thread
+    //has claimed the key it mustn't wait on its own claim
+    return get(key, !claimed.get().contains(key)).entry;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void putEntry(String key, HttpCacheEntry entry) throws IOException {
+    key = partition + key;
+    claimed.get().remove(key);
+    byte[] record = HttpCache.encode(key, entry);
+    Connection conn = take();
+    try {
+      conn.out.writeByte(CacheDaemon.PUT);
+      FrameCodec.writeString(conn.out, key);
+      conn.out.writeInt(record.length);
+      conn.out.write(record);
+      conn.out.flush();
+      conn.in.readByte();
+      idle.add(conn);
+    } catch (IOException e) {
+      Util.close(conn.socket);
+      throw e;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeEntry(String key) throws IOException {
+    key = partition + key;
+    claimed.get().remove(key);
+    send(CacheDaemon.REMOVE, key);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
+    key = partition + key;
+    for (int i = 0; i < UPDATE_ATTEMPTS; i++) {
+      Result result = get(key, false);
+      byte[] record = HttpCache.encode(key, callback.update(result.entry));
+      Connection conn = take();
+      try {
+        conn.out.writeByte(CacheDaemon.PUT_IF);
+        FrameCodec.writeString(conn.out, key);
+        conn.out.writeLong(result.version);
+        conn.out.writeInt(record.length);
+        conn.out.write(record);
+        conn.out.flush();
+        byte status = conn.in.readByte();
+        idle.add(conn);
+        if (status == CacheDaemon.OK) {
+          return;
+        }
+      } catch (IOException e) {
+        Util.close(conn.socket);
+        throw e;
+      }
+    }
+    throw new HttpCacheUpdateException("Cache entry changed concurrently too many times: " + key);
+  }
+
+  /**
+   * Releases the claims this thread holds on keys it missed, so other processes waiting on them proceed.
+   */
+  void release() {
+    Set<String> keys = claimed.get();
+    if (!keys.isEmpty()) {
+      for (String key : keys) {
+        try {
+          send(CacheDaemon.RELEASE, key);
+        } catch (Throwable t) {
+          LogsServer.instance().exception(t);
+        }
+      }
+      keys.clear();
+    }
+  }
+
+  private Result get(String key, boolean coalesce) throws IOException {
+    Connection conn = take();
+    try {
+      conn.out.writeByte(CacheDaemon.GET);
+      FrameCodec.writeString(conn.out, key);
+      conn.out.writeBoolean(coalesce);
+      conn.out.flush();
+      byte status = conn.in.readByte();
+      long version = conn.in.readLong();
+      HttpCacheEntry entry = null;
+      if (status == CacheDaemon.HIT) {
+        byte[] record = new byte[conn.in.readInt()];
+        conn.in.readFully(record);
+        entry = HttpCache.decode(record, key);
+      } else if (status == CacheDaemon.CLAIMED) {
+        claimed.get().add(key);
+      }
+      idle.add(conn);
+      return new Result(version, entry);
+    } catch (IOException e) {
+      Util.close(conn.socket);
+      throw e;
+    }
+  }
+
+  private void send(byte op, String key) throws IOException {
+    Connection conn = take();
+    try {
+      conn.out.writeByte(op);
+      FrameCodec.writeString(conn.out, key);
+      conn.out.flush();
+      conn.in.readByte();
+      idle.add(conn);
+    } catch (IOException e) {
+      Util.close(conn.socket);
+      throw e;
+    }
+  }
+
+  private Connection take() throws IOException {
+    Connection conn = idle.poll();
+    return conn == null ? new Connection(port, token) : conn;
+  }
+
+  void close() {
+    for (Connection conn; (conn = idle.poll()) != null;) {
+      Util.close(conn.socket);
+    }
+  }
+}
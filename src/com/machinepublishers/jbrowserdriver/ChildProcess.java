@@ -0,0 +1,131 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Parent-side handle to a child JVM running {@link JBrowserDriverServer}.
+ */
+class ChildProcess {
+  final AtomicReference<Process> process = new AtomicReference<Process>();
+  final AtomicBoolean ended = new AtomicBoolean();
+  final AtomicReference<PortGroup> configuredPortGroup = new AtomicReference<PortGroup>();
+  final AtomicReference<PortGroup> actualPortGroup = new AtomicReference<PortGroup>();
+  final AtomicReference<Logger> logger = new AtomicReference<Logger>();
+  final AtomicReference<String> logPrefix = new AtomicReference<String>("");
+  final AtomicReference<JBrowserDriverRemote> remote = new AtomicReference<JBrowserDriverRemote>();
+  final AtomicReference<File> classDataArchive = new AtomicReference<File>();
+  final AtomicLong launchMS = new AtomicLong(-1);
+  final AtomicInteger uses = new AtomicInteger();
+  final AtomicInteger sessions = new AtomicInteger();
+  final AtomicReference<Registry> registry = new AtomicReference<Registry>();
+  final AtomicInteger framedPort = new AtomicInteger(-1);
+  final AtomicReference<FramedClient> framedClient = new AtomicReference<FramedClient>();
+  final AtomicReference<SocketLock> lock = new AtomicReference<SocketLock>(new SocketLock());
+  final long created = System.currentTimeMillis();
+  final File tmpDir;
+  final FileRemover shutdownHook;
+  private final AtomicReference<HeartbeatRemote> heartbeat = new AtomicReference<HeartbeatRemote>();
+  private final AtomicReference<Thread> heartbeatThread = new AtomicReference<Thread>();
+
+  ChildProcess(Settings settings) {
+    File tmpDir = null;
+    try {
+      tmpDir = Files.createTempDirectory("jbd_tmp_").toFile();
+    } catch (Throwable t) {
+      Util.handleException(t);
+    }
+    this.tmpDir = tmpDir;
+    this.shutdownHook = new FileRemover(tmpDir);
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    logger.set(settings.logger());
+  }
+
+  void connected(HeartbeatRemote heartbeat, JBrowserDriverRemote remote, boolean daemon) {
+    this.heartbeat.set(heartbeat);
+    this.remote.set(remote);
+    startHeartbeat(daemon);
+  }
+
+  /**
+   * Replaces the heartbeat thread if it isn't already of the given kind. Only processes in use
+   * by a driver keep the JVM from exiting, so this is called as processes enter and leave the pool.
+   */
+  void daemon(boolean daemon) {
+    Thread thread = heartbeatThread.get();
+    if (thread != null && thread.isDaemon() != daemon && !ended.get()) {
+      startHeartbeat(daemon);
+    }
+  }
+
+  private void startHeartbeat(boolean daemon) {
+    Thread thread = new Thread(() -> {
+      while (true) {
+        if (ended.get() || heartbeatThread.get() != Thread.currentThread()) {
+          return;
+        }
+        try {
+          this.heartbeat.get().heartbeat();
+        } catch (RemoteException e) {}
+        try {
+          Thread.sleep(5000);
+        } catch (InterruptedException e) {}
+      }
+    });
+    thread.setName("Heartbeat");
+    thread.setDaemon(daemon);
+    Thread prev = heartbeatThread.getAndSet(thread);
+    thread.start();
+    if (prev != null) {
+      prev.interrupt();
+    }
+  }
+
+  boolean isAlive() {
+    Process proc = process.get();
+    return !ended.get() && proc != null && proc.isAlive();
+  }
+
+  /**
+   * @return Whether this process may be handed to another session, given the settings of its current one.
+   */
+  boolean reusable(Settings settings) {
+    return isAlive()
+        && uses.get() <= settings.maxProcessReuse()
+        && (settings.maxProcessAge() < 1 || System.currentTimeMillis() - created < settings.maxProcessAge());
+  }
+
+  void stopHeartbeat() {
+    Thread thread = heartbeatThread.get();
+    if (thread != null) {
+      try {
+        thread.interrupt();
+        thread.join();
+      } catch (Exception e) {}
+    }
+  }
+}
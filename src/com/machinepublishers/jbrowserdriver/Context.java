@@ -52,8 +52,10 @@ class Context {
   private int current = 0;
   private final AtomicReference<File> autoUserDataDirectory = new AtomicReference<>();;
   private final Object lock = new Object();
+  final Session session;
 
-  Context() {
+  Context(Session session) {
+    this.session = session;
     synchronized (lock) {
       //UserData dir must be computed before any ContextItem is initialized.
       setUpUserDataDir();
@@ -72,7 +74,7 @@ class Context {
   private void setUpUserDataDir() {
     FileUtils.deleteQuietly(autoUserDataDirectory.get());
     autoUserDataDirectory.set(null);
-    if (SettingsManager.settings().userDataDirectory() == null) {
+    if (session.settings().userDataDirectory() == null) {
       //Temporary because cookies aren't saved too.
       //App has its own temp dir, so this won't collide with other instances.
       try {
@@ -82,7 +84,7 @@ class Context {
         Util.handleException(e);
       }
     } else {
-      userDataDirectory.set(SettingsManager.settings().userDataDirectory());
+      userDataDirectory.set(session.settings().userDataDirectory());
       userDataDirectory.get().mkdirs();
     }
   }
@@ -98,6 +100,15 @@ class Context {
     }
   }
 
+  void dispose() {
+    if (initialized.get()) {
+      removeItems();
+    }
+    synchronized (lock) {
+      FileUtils.deleteQuietly(autoUserDataDirectory.getAndSet(null));
+    }
+  }
+
   void init(final JBrowserDriverServer driver) {
     synchronized (lock) {
       if (!items.isEmpty()) {
@@ -171,7 +182,7 @@ class Context {
   void removeItem() {
     AppThread.exec(() -> {
       synchronized (lock) {
-        items.get(current).stage.get().close();
+        items.get(current).close();
         itemMap.remove(items.remove(current).itemId.get());
         current = 0;
         return null;
@@ -182,7 +193,7 @@ class Context {
   void removeItem(final String itemId) {
     AppThread.exec(() -> {
       synchronized (lock) {
-        itemMap.remove(itemId).stage.get().close();
+        itemMap.remove(itemId).close();
         items.remove(itemId);
         current = 0;
         return null;
@@ -194,7 +205,7 @@ class Context {
     AppThread.exec(() -> {
       synchronized (lock) {
         for (ContextItem curItem : items) {
-          curItem.stage.get().close();
+          curItem.close();
         }
         items.clear();
         itemMap.clear();
@@ -44,15 +44,18 @@ class ContextItem {
   final AtomicReference<WebView> view = new AtomicReference<WebView>();
   final AtomicReference<WebEngine> engine = new AtomicReference<WebEngine>();
   final AtomicReference<HttpListener> httpListener = new AtomicReference<HttpListener>();
+  private final AtomicReference<ElementTableServer> elements = new AtomicReference<ElementTableServer>();
   final AtomicBoolean initialized = new AtomicBoolean();
   final AtomicReference<String> itemId = new AtomicReference<String>();
   final AtomicReference<Context> context = new AtomicReference<Context>();
   final StatusCode statusCode = new StatusCode();
+  final StatusMonitor statusMonitor;
   private final Object lock = new Object();
   private ElementServer frame;
 
   ContextItem() {
     itemId.set(Long.toString(currentItemId.getAndIncrement()));
+    statusMonitor = StatusMonitor.register(itemId.get());
   }
 
   JSObject selectedFrameDoc() {
@@ -156,6 +159,29 @@ class ContextItem {
     }
   }
 
+  ElementTableServer elements() {
+    synchronized (elements) {
+      if (elements.get() == null) {
+        try {
+          elements.set(new ElementTableServer());
+        } catch (RemoteException e) {
+          Util.handleException(e);
+        }
+      }
+      return elements.get();
+    }
+  }
+
+  void close() {
+    stage.get().close();
+    statusMonitor.unregister();
+    synchronized (elements) {
+      if (elements.get() != null) {
+        elements.getAndSet(null).dispose();
+      }
+    }
+  }
+
   void deselectFrame() {
     synchronized (lock) {
       frame = null;
@@ -184,17 +210,18 @@ class ContextItem {
   void init(final JBrowserDriverServer driver, final Context context) {
     if (initialized.compareAndSet(false, true)) {
       this.context.set(context);
-      SettingsManager.register(stage, view);
+      statusMonitor.session(context.session);
+      SettingsManager.register(context.session.settings(), stage, view);
       engine.set(view.get().getEngine());
       try {
-        window.set(new WindowServer(stage, statusCode));
+        window.set(new WindowServer(context.session, stage, statusCode));
         context.alert.get().listen(this);
       } catch (RemoteException e) {
         Util.handleException(e);
       }
       final ContextItem thisObject = this;
       AppThread.exec(statusCode, () -> {
-        Settings settings = SettingsManager.settings();
+        Settings settings = context.session.settings();
         engine.get().setJavaScriptEnabled(settings.javascript());
         //If null engine uses automatic value.
         engine.get().setUserDataDirectory(context.userDataDirectory.get());
@@ -154,15 +154,15 @@ class CookieStore extends CookieHandler implements org.apache.http.client.Cookie
       if ((!cookie.isSecure() || reqSecure)
           && reqHost.endsWith(canonicalHost(cookie.getDomain()))
           && reqPath.startsWith(canonicalPath(cookie.getPath()))) {
-      	if(SettingsManager.settings().getCsrfResponseToken() != null && 
-       		  cookie.getName().equalsIgnoreCase(SettingsManager.settings().getCsrfResponseToken())) {
+      	if(settings.getCsrfResponseToken() != null && 
+       		  cookie.getName().equalsIgnoreCase(settings.getCsrfResponseToken())) {
        	  csrfToken = cookie.getValue();
        	  break;
         }
       }
     }
     if(csrfToken != null) {
-      req.addHeader(SettingsManager.settings().getCsrfRequestToken(), csrfToken);
+      req.addHeader(settings.getCsrfRequestToken(), csrfToken);
     }
   }
 
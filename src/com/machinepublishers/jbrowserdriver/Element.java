@@ -52,6 +52,10 @@ class Element implements WebElement, JavascriptExecutor, FindsById, FindsByClass
     this.lock = lock;
   }
 
+  ElementRemote remote() {
+    return remote;
+  }
+
   static List<WebElement> constructList(List<ElementRemote> elements, JBrowserDriver driver, SocketLock lock) {
     List<WebElement> ret = new ArrayList<WebElement>();
     if (elements != null) {
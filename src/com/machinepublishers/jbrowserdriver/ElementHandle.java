@@ -0,0 +1,385 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Lightweight reference to an element, sent in place of the element itself. It holds the element's ID
+ * in the {@link ElementTableServer} of its window, so finding elements exports no remote objects.
+ * When deserialized in the child process (i.e., when passed back as an argument), it resolves to its element.
+ */
+class ElementHandle implements ElementRemote, Serializable {
+  private final ElementTableRemote table;
+  private final long tableId;
+  private final long elementId;
+
+  /**
+   * Identifies an element without resolving to it when deserialized, so a stale element can be
+   * reported as missing rather than failing the whole call it's passed to.
+   */
+  static class Id implements Serializable {
+    final long tableId;
+    final long elementId;
+
+    Id(long tableId, long elementId) {
+      this.tableId = tableId;
+      this.elementId = elementId;
+    }
+  }
+
+  ElementHandle(ElementTableRemote table, long tableId, long elementId) {
+    this.table = table;
+    this.tableId = tableId;
+    this.elementId = elementId;
+  }
+
+  Id id() {
+    return new Id(tableId, elementId);
+  }
+
+  private Object readResolve() {
+    ElementTableServer local = ElementTableServer.local(tableId);
+    return local == null ? new ElementHandle(TimedRemote.wrap(table), tableId, elementId) : local.element(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void activate() throws RemoteException {
+    table.activate(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void scriptParam(ElementId id) throws RemoteException {
+    table.scriptParam(elementId, id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void click() throws RemoteException {
+    table.click(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void submit() throws RemoteException {
+    table.submit(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void sendKeys(CharSequence... keys) throws RemoteException {
+    table.sendKeys(elementId, keys);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clear() throws RemoteException {
+    table.clear(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getAttribute(String attrName) throws RemoteException {
+    return table.getAttribute(elementId, attrName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getCssValue(String name) throws RemoteException {
+    return table.getCssValue(elementId, name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Point remoteGetLocation() throws RemoteException {
+    return table.remoteGetLocation(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Dimension remoteGetSize() throws RemoteException {
+    return table.remoteGetSize(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Rectangle remoteGetRect() throws RemoteException {
+    return table.remoteGetRect(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getTagName() throws RemoteException {
+    return table.getTagName(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getText() throws RemoteException {
+    return table.getText(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isDisplayed() throws RemoteException {
+    return table.isDisplayed(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isEnabled() throws RemoteException {
+    return table.isEnabled(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isSelected() throws RemoteException {
+    return table.isSelected(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElement(By by) throws RemoteException {
+    return table.findElement(elementId, by);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElements(By by) throws RemoteException {
+    return table.findElements(elementId, by);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByXPath(String expr) throws RemoteException {
+    return table.findElementByXPath(elementId, expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByXPath(String expr) throws RemoteException {
+    return table.findElementsByXPath(elementId, expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByTagName(String tagName) throws RemoteException {
+    return table.findElementByTagName(elementId, tagName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByTagName(String tagName) throws RemoteException {
+    return table.findElementsByTagName(elementId, tagName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByCssSelector(String expr) throws RemoteException {
+    return table.findElementByCssSelector(elementId, expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByCssSelector(String expr) throws RemoteException {
+    return table.findElementsByCssSelector(elementId, expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByName(String name) throws RemoteException {
+    return table.findElementByName(elementId, name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByName(String name) throws RemoteException {
+    return table.findElementsByName(elementId, name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByLinkText(String text) throws RemoteException {
+    return table.findElementByLinkText(elementId, text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByPartialLinkText(String text) throws RemoteException {
+    return table.findElementByPartialLinkText(elementId, text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByLinkText(String text) throws RemoteException {
+    return table.findElementsByLinkText(elementId, text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByPartialLinkText(String text) throws RemoteException {
+    return table.findElementsByPartialLinkText(elementId, text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByClassName(String cssClass) throws RemoteException {
+    return table.findElementByClassName(elementId, cssClass);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByClassName(String cssClass) throws RemoteException {
+    return table.findElementsByClassName(elementId, cssClass);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementById(String id) throws RemoteException {
+    return table.findElementById(elementId, id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsById(String id) throws RemoteException {
+    return table.findElementsById(elementId, id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object executeAsyncScript(String script, Object... args) throws RemoteException {
+    return table.executeAsyncScript(elementId, script, args);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object executeScript(String script, Object... args) throws RemoteException {
+    return table.executeScript(elementId, script, args);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Point locate() throws RemoteException {
+    return table.locate(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte[] getScreenshot() throws WebDriverException, RemoteException {
+    return table.getScreenshot(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int remoteHashCode() throws RemoteException {
+    return table.remoteHashCode(elementId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean remoteEquals(ElementId id) throws RemoteException {
+    return table.remoteEquals(elementId, id);
+  }
+}
@@ -17,6 +17,7 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -58,9 +59,13 @@ import com.machinepublishers.jbrowserdriver.Robot.MouseButton;
 import javafx.stage.Stage;
 import netscape.javascript.JSObject;
 
-class ElementServer extends RemoteObject implements ElementRemote, WebElement,
+/**
+ * Not exported itself: when sent to the parent process it's replaced by an
+ * {@link ElementHandle} from its window's {@link ElementTableServer}.
+ */
+class ElementServer implements ElementRemote, WebElement,
     JavascriptExecutor, FindsById, FindsByClassName, FindsByLinkText, FindsByName,
-    FindsByCssSelector, FindsByTagName, FindsByXPath {
+    FindsByCssSelector, FindsByTagName, FindsByXPath, Serializable {
 
   private static final String IS_VISIBLE;
 
@@ -161,6 +166,10 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
     return node;
   }
 
+  private Object writeReplace() {
+    return contextItem.elements().handle(this);
+  }
+
   void setFrameId(long frameId) {
     this.frameId.set(frameId);
   }
@@ -197,6 +206,12 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
     }
   }
 
+  static void clearScriptParams() {
+    synchronized (map) {
+      map.clear();
+    }
+  }
+
   private static void validate(JSObject node, ContextItem contextItem) {
     if (node == null) {
       throw new NoSuchElementException("Element not found or does not exist.");
@@ -505,6 +520,57 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
     });
   }
 
+  /**
+   * Reads properties of many elements with a single hop to the FX thread.
+   * 
+   * @see JBrowserDriver#getProperties(List, String...)
+   */
+  static List<Map<String, Object>> properties(final StatusCode statusCode,
+      final List<ElementServer> elements, final List<String> properties) {
+    return AppThread.exec(statusCode, () -> {
+      List<Map<String, Object>> values = new ArrayList<Map<String, Object>>(elements.size());
+      for (ElementServer element : elements) {
+        Map<String, Object> elementValues = new LinkedHashMap<String, Object>();
+        for (String property : properties) {
+          Object value = null;
+          try {
+            value = element == null ? null : element.property(property);
+          } catch (WebDriverException e) {
+            //stale, or not displayed for properties requiring it
+          }
+          elementValues.put(property, value);
+        }
+        values.add(elementValues);
+      }
+      return values;
+    });
+  }
+
+  private Object property(String property) {
+    if (property.startsWith("attribute:")) {
+      return getAttribute(property.substring("attribute:".length()));
+    }
+    if (property.startsWith("css:")) {
+      return getCssValue(property.substring("css:".length()));
+    }
+    switch (property) {
+      case "text":
+        return getText();
+      case "tagName":
+        return getTagName();
+      case "rect":
+        return remoteGetRect();
+      case "displayed":
+        return isDisplayed();
+      case "enabled":
+        return isEnabled();
+      case "selected":
+        return isSelected();
+      default:
+        throw new IllegalArgumentException("Unknown element property: " + property);
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,107 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
+
+interface ElementTableRemote extends Remote {
+  void activate(long elementId) throws RemoteException;
+
+  void scriptParam(long elementId, ElementId id) throws RemoteException;
+
+  void click(long elementId) throws RemoteException;
+
+  void submit(long elementId) throws RemoteException;
+
+  void sendKeys(long elementId, CharSequence... keys) throws RemoteException;
+
+  void clear(long elementId) throws RemoteException;
+
+  String getAttribute(long elementId, String attrName) throws RemoteException;
+
+  String getCssValue(long elementId, String name) throws RemoteException;
+
+  Point remoteGetLocation(long elementId) throws RemoteException;
+
+  Dimension remoteGetSize(long elementId) throws RemoteException;
+
+  Rectangle remoteGetRect(long elementId) throws RemoteException;
+
+  String getTagName(long elementId) throws RemoteException;
+
+  String getText(long elementId) throws RemoteException;
+
+  boolean isDisplayed(long elementId) throws RemoteException;
+
+  boolean isEnabled(long elementId) throws RemoteException;
+
+  boolean isSelected(long elementId) throws RemoteException;
+
+  ElementRemote findElement(long elementId, By by) throws RemoteException;
+
+  List<ElementRemote> findElements(long elementId, By by) throws RemoteException;
+
+  ElementRemote findElementByXPath(long elementId, String expr) throws RemoteException;
+
+  List<ElementRemote> findElementsByXPath(long elementId, String expr) throws RemoteException;
+
+  ElementRemote findElementByTagName(long elementId, String tagName) throws RemoteException;
+
+  List<ElementRemote> findElementsByTagName(long elementId, String tagName) throws RemoteException;
+
+  ElementRemote findElementByCssSelector(long elementId, String expr) throws RemoteException;
+
+  List<ElementRemote> findElementsByCssSelector(long elementId, String expr) throws RemoteException;
+
+  ElementRemote findElementByName(long elementId, String name) throws RemoteException;
+
+  List<ElementRemote> findElementsByName(long elementId, String name) throws RemoteException;
+
+  ElementRemote findElementByLinkText(long elementId, String text) throws RemoteException;
+
+  ElementRemote findElementByPartialLinkText(long elementId, String text) throws RemoteException;
+
+  List<ElementRemote> findElementsByLinkText(long elementId, String text) throws RemoteException;
+
+  List<ElementRemote> findElementsByPartialLinkText(long elementId, String text) throws RemoteException;
+
+  ElementRemote findElementByClassName(long elementId, String cssClass) throws RemoteException;
+
+  List<ElementRemote> findElementsByClassName(long elementId, String cssClass) throws RemoteException;
+
+  ElementRemote findElementById(long elementId, String id) throws RemoteException;
+
+  List<ElementRemote> findElementsById(long elementId, String id) throws RemoteException;
+
+  Object executeAsyncScript(long elementId, String script, Object... args) throws RemoteException;
+
+  Object executeScript(long elementId, String script, Object... args) throws RemoteException;
+
+  Point locate(long elementId) throws RemoteException;
+
+  byte[] getScreenshot(long elementId) throws WebDriverException, RemoteException;
+
+  int remoteHashCode(long elementId) throws RemoteException;
+
+  boolean remoteEquals(long elementId, ElementId id) throws RemoteException;
+}
@@ -0,0 +1,487 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+
+import netscape.javascript.JSObject;
+
+/**
+ * Elements of the current page in one window, indexed by the IDs held by their {@link ElementHandle}s.
+ * This is the only remote object exported for a window's elements, and calls on handles are resolved
+ * through it. The table is cleared when the window navigates to a new page, at which point any handles
+ * to the previous page's elements become stale.
+ * <p>
+ * Finding the same node again reuses its handle, so repeated lookups don't grow the table. As pages that never
+ * navigate (e.g., single-page apps) replace their content, the table is pruned of nodes no longer in a
+ * document, whose handles would be stale anyway, each time it doubles in size. Pruning runs in the background,
+ * so the call that grew the table isn't held up by it.
+ */
+class ElementTableServer extends RemoteObject implements ElementTableRemote {
+  private static final AtomicLong nextTableId = new AtomicLong();
+  private static final int PRUNE_MIN = 1024;
+  private static final String CONNECTED = "this.ownerDocument == null || this.ownerDocument.contains(this)";
+  private static final Map<Long, ElementTableServer> tables = new ConcurrentHashMap<Long, ElementTableServer>();
+  private static final ExecutorService pruner = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "JBrowserDriver element table pruner");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final long tableId = nextTableId.incrementAndGet();
+  private final Map<Long, ElementServer> elements = new HashMap<Long, ElementServer>();
+  private final Map<JSObject, ElementHandle> handles = new HashMap<JSObject, ElementHandle>();
+  private long nextId;
+  private int pruneAt = PRUNE_MIN;
+
+  ElementTableServer() throws RemoteException {
+    tables.put(tableId, this);
+  }
+
+  static ElementTableServer local(long tableId) {
+    return tables.get(tableId);
+  }
+
+  /**
+   * @return The element, or null if it's stale or its window is gone
+   */
+  static ElementServer resolve(ElementHandle.Id id) {
+    ElementTableServer table = tables.get(id.tableId);
+    if (table == null) {
+      return null;
+    }
+    synchronized (table.elements) {
+      return table.elements.get(id.elementId);
+    }
+  }
+
+  ElementHandle handle(ElementServer element) {
+    final ElementHandle handle;
+    final boolean prune;
+    synchronized (elements) {
+      ElementHandle existing = handles.get(element.node());
+      if (existing == null) {
+        handle = new ElementHandle(this, tableId, ++nextId);
+        handles.put(element.node(), handle);
+      } else {
+        handle = existing;
+      }
+      elements.put(handle.id().elementId, element);
+      prune = elements.size() >= pruneAt;
+      if (prune) {
+        pruneAt = Integer.MAX_VALUE;
+      }
+    }
+    if (prune) {
+      pruner.execute(() -> prune());
+    }
+    return handle;
+  }
+
+  private void prune() {
+    final List<Map.Entry<Long, ElementServer>> entries;
+    synchronized (elements) {
+      entries = new ArrayList<Map.Entry<Long, ElementServer>>(elements.entrySet());
+    }
+    List<Long> detached = new ArrayList<Long>();
+    if (tables.get(tableId) != this) {
+      return;
+    }
+    try {
+      //not tied to the window's status, so it doesn't wait for a page load to finish
+      AppThread.exec(() -> {
+        for (Map.Entry<Long, ElementServer> entry : entries) {
+          if (!Boolean.TRUE.equals(entry.getValue().node().eval(CONNECTED))) {
+            detached.add(entry.getKey());
+          }
+        }
+        return null;
+      });
+    } catch (Throwable t) {
+      LogsServer.instance().exception(t);
+    }
+    synchronized (elements) {
+      for (Long elementId : detached) {
+        ElementServer element = elements.remove(elementId);
+        if (element != null) {
+          handles.remove(element.node());
+        }
+      }
+      pruneAt = Math.max(PRUNE_MIN, 2 * elements.size());
+    }
+  }
+
+  ElementServer element(long elementId) {
+    synchronized (elements) {
+      ElementServer element = elements.get(elementId);
+      if (element == null) {
+        throw new StaleElementReferenceException("The page containing the element no longer exists.");
+      }
+      return element;
+    }
+  }
+
+  /**
+   * Invalidates every handle to the current page's elements.
+   */
+  void clear() {
+    synchronized (elements) {
+      elements.clear();
+      handles.clear();
+    }
+  }
+
+  void dispose() {
+    clear();
+    tables.remove(tableId);
+    try {
+      UnicastRemoteObject.unexportObject(this, true);
+    } catch (Throwable t) {}
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void activate(long elementId) {
+    element(elementId).activate();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void scriptParam(long elementId, ElementId id) {
+    element(elementId).scriptParam(id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void click(long elementId) {
+    element(elementId).click();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void submit(long elementId) {
+    element(elementId).submit();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void sendKeys(long elementId, CharSequence... keys) {
+    element(elementId).sendKeys(keys);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clear(long elementId) {
+    element(elementId).clear();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getAttribute(long elementId, String attrName) {
+    return element(elementId).getAttribute(attrName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getCssValue(long elementId, String name) {
+    return element(elementId).getCssValue(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Point remoteGetLocation(long elementId) {
+    return element(elementId).remoteGetLocation();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Dimension remoteGetSize(long elementId) {
+    return element(elementId).remoteGetSize();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Rectangle remoteGetRect(long elementId) {
+    return element(elementId).remoteGetRect();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getTagName(long elementId) {
+    return element(elementId).getTagName();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getText(long elementId) {
+    return element(elementId).getText();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isDisplayed(long elementId) {
+    return element(elementId).isDisplayed();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isEnabled(long elementId) {
+    return element(elementId).isEnabled();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isSelected(long elementId) {
+    return element(elementId).isSelected();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElement(long elementId, By by) {
+    return element(elementId).findElement(by);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElements(long elementId, By by) {
+    return element(elementId).findElements(by);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByXPath(long elementId, String expr) {
+    return element(elementId).findElementByXPath(expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByXPath(long elementId, String expr) {
+    return element(elementId).findElementsByXPath(expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByTagName(long elementId, String tagName) {
+    return element(elementId).findElementByTagName(tagName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByTagName(long elementId, String tagName) {
+    return element(elementId).findElementsByTagName(tagName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByCssSelector(long elementId, String expr) {
+    return element(elementId).findElementByCssSelector(expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByCssSelector(long elementId, String expr) {
+    return element(elementId).findElementsByCssSelector(expr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByName(long elementId, String name) {
+    return element(elementId).findElementByName(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByName(long elementId, String name) {
+    return element(elementId).findElementsByName(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByLinkText(long elementId, String text) {
+    return element(elementId).findElementByLinkText(text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByPartialLinkText(long elementId, String text) {
+    return element(elementId).findElementByPartialLinkText(text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByLinkText(long elementId, String text) {
+    return element(elementId).findElementsByLinkText(text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByPartialLinkText(long elementId, String text) {
+    return element(elementId).findElementsByPartialLinkText(text);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementByClassName(long elementId, String cssClass) {
+    return element(elementId).findElementByClassName(cssClass);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsByClassName(long elementId, String cssClass) {
+    return element(elementId).findElementsByClassName(cssClass);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote findElementById(long elementId, String id) {
+    return element(elementId).findElementById(id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ElementRemote> findElementsById(long elementId, String id) {
+    return element(elementId).findElementsById(id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object executeAsyncScript(long elementId, String script, Object... args) {
+    return element(elementId).executeAsyncScript(script, args);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object executeScript(long elementId, String script, Object... args) {
+    return element(elementId).executeScript(script, args);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Point locate(long elementId) {
+    return element(elementId).locate();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte[] getScreenshot(long elementId) {
+    return element(elementId).getScreenshot();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int remoteHashCode(long elementId) {
+    return element(elementId).remoteHashCode();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean remoteEquals(long elementId, ElementId id) {
+    return element(elementId).remoteEquals(id);
+  }
+}
@@ -0,0 +1,370 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.rmi.Remote;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Encodes the frames of the transport used between {@link FramedClient} and {@link FramedServer}.
+ * <p>
+ * Each frame is a four-byte length followed by a type byte and a body. Values are tagged: nulls,
+ * booleans, numbers, strings, byte arrays, and java.util collections have compact encodings, remote
+ * objects are sent as {@link FramedRef}s, and anything else falls back to Java serialization
+ * (with nested remote objects also replaced by references).
+ */
+abstract class FrameCodec {
+  static final byte CALL = 1;
+  static final byte RETURN = 2;
+  static final byte THROW = 3;
+  static final byte RELEASE = 4;
+  static final byte LOOKUP = 5;
+
+  private static final byte NULL = 0;
+  private static final byte TRUE = 1;
+  private static final byte FALSE = 2;
+  private static final byte INT = 3;
+  private static final byte LONG = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte STRING = 6;
+  private static final byte BYTES = 7;
+  private static final byte LIST = 8;
+  private static final byte SET = 9;
+  private static final byte MAP = 10;
+  private static final byte ARRAY = 11;
+  private static final byte REF = 12;
+  private static final byte SERIAL = 13;
+  private static final Map<String, Method[]> methods = new HashMap<String, Method[]>();
+
+  /**
+   * @return Reference to send in place of the remote object.
+   */
+  abstract FramedRef export(Remote remote) throws IOException;
+
+  /**
+   * @return Local object for a received reference.
+   */
+  abstract Object resolve(FramedRef ref) throws IOException;
+
+  /**
+   * @return Methods of the interfaces in an order both ends agree on, so a call can identify its method by index.
+   */
+  static Method[] methods(Class<?>[] interfaces) {
+    StringBuilder key = new StringBuilder();
+    for (Class<?> cur : interfaces) {
+      key.append(cur.getName()).append(',');
+    }
+    synchronized (methods) {
+      Method[] cached = methods.get(key.toString());
+      if (cached == null) {
+        Map<String, Method> sorted = new TreeMap<String, Method>();
+        for (Class<?> cur : interfaces) {
+          for (Method method : cur.getMethods()) {
+            String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+            if (!sorted.containsKey(signature)) {
+              sorted.put(signature, method);
+            }
+          }
+        }
+        cached = sorted.values().toArray(new Method[0]);
+        methods.put(key.toString(), cached);
+      }
+      return cached;
+    }
+  }
+
+  static Class<?>[] interfaces(String[] names) throws ClassNotFoundException {
+    Class<?>[] interfaces = new Class<?>[names.length];
+    for (int i = 0; i < names.length; i++) {
+      interfaces[i] = Class.forName(names[i], false, FrameCodec.class.getClassLoader());
+    }
+    return interfaces;
+  }
+
+  static void writeFrame(DataOutputStream out, ByteArrayOutputStream frame) throws IOException {
+    synchronized (out) {
+      out.writeInt(frame.size());
+      frame.writeTo(out);
+      out.flush();
+    }
+  }
+
+  static DataInputStream readFrame(DataInputStream in) throws IOException {
+    byte[] frame = new byte[in.readInt()];
+    in.readFully(frame);
+    return new DataInputStream(new ByteArrayInputStream(frame));
+  }
+
+  static void writeVarInt(DataOutputStream out, int val) throws IOException {
+    while ((val & ~0x7F) != 0) {
+      out.writeByte((val & 0x7F) | 0x80);
+      val >>>= 7;
+    }
+    out.writeByte(val);
+  }
+
+  static int readVarInt(DataInputStream in) throws IOException {
+    int val = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int cur = in.readUnsignedByte();
+      val |= (cur & 0x7F) << shift;
+      if ((cur & 0x80) == 0) {
+        return val;
+      }
+    }
+    throw new IOException("Malformed frame.");
+  }
+
+  private static void writeVarLong(DataOutputStream out, long val) throws IOException {
+    while ((val & ~0x7FL) != 0) {
+      out.writeByte((int) ((val & 0x7F) | 0x80));
+      val >>>= 7;
+    }
+    out.writeByte((int) val);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long val = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int cur = in.readUnsignedByte();
+      val |= (long) (cur & 0x7F) << shift;
+      if ((cur & 0x80) == 0) {
+        return val;
+      }
+    }
+    throw new IOException("Malformed frame.");
+  }
+
+  static void writeString(DataOutputStream out, String val) throws IOException {
+    byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readVarInt(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return Whether the object is sent by reference. As with RMI, serializable objects
+   *         implementing remote interfaces without being exported are sent by value.
+   */
+  private static boolean isRemote(Object obj) {
+    return obj instanceof java.rmi.server.RemoteObject
+        || (obj instanceof Remote && !(obj instanceof Serializable));
+  }
+
+  private static boolean isJavaUtil(Object obj) {
+    return obj.getClass().getName().startsWith("java.util.");
+  }
+
+  void write(DataOutputStream out, Object obj) throws IOException {
+    if (obj == null) {
+      out.writeByte(NULL);
+    } else if (obj instanceof Boolean) {
+      out.writeByte(((Boolean) obj).booleanValue() ? TRUE : FALSE);
+    } else if (obj instanceof Integer) {
+      int val = ((Integer) obj).intValue();
+      out.writeByte(INT);
+      writeVarInt(out, (val << 1) ^ (val >> 31));
+    } else if (obj instanceof Long) {
+      long val = ((Long) obj).longValue();
+      out.writeByte(LONG);
+      writeVarLong(out, (val << 1) ^ (val >> 63));
+    } else if (obj instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble(((Double) obj).doubleValue());
+    } else if (obj instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) obj);
+    } else if (obj instanceof byte[]) {
+      out.writeByte(BYTES);
+      writeVarInt(out, ((byte[]) obj).length);
+      out.write((byte[]) obj);
+    } else if (isRemote(obj)) {
+      out.writeByte(REF);
+      writeRef(out, export((Remote) obj));
+    } else if (obj instanceof List && isJavaUtil(obj)) {
+      out.writeByte(LIST);
+      writeCollection(out, (Collection<?>) obj);
+    } else if (obj instanceof Set && isJavaUtil(obj)) {
+      out.writeByte(SET);
+      writeCollection(out, (Collection<?>) obj);
+    } else if (obj instanceof Map && isJavaUtil(obj)) {
+      out.writeByte(MAP);
+      Map<?, ?> map = (Map<?, ?>) obj;
+      writeVarInt(out, map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        write(out, entry.getKey());
+        write(out, entry.getValue());
+      }
+    } else if (obj instanceof Object[]) {
+      Object[] array = (Object[]) obj;
+      out.writeByte(ARRAY);
+      writeString(out, array.getClass().getComponentType().getName());
+      writeVarInt(out, array.length);
+      for (Object cur : array) {
+        write(out, cur);
+      }
+    } else {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream objOut = new ObjectOutputStream(bytes) {
+        {
+          enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object cur) throws IOException {
+          return isRemote(cur) ? export((Remote) cur) : cur;
+        }
+      };
+      objOut.writeObject(obj);
+      objOut.close();
+      out.writeByte(SERIAL);
+      writeVarInt(out, bytes.size());
+      bytes.writeTo(out);
+    }
+  }
+
+  private void writeCollection(DataOutputStream out, Collection<?> collection) throws IOException {
+    writeVarInt(out, collection.size());
+    for (Object cur : collection) {
+      write(out, cur);
+    }
+  }
+
+  private static void writeRef(DataOutputStream out, FramedRef ref) throws IOException {
+    writeVarInt(out, ref.id);
+    writeVarInt(out, ref.interfaces.length);
+    for (String cur : ref.interfaces) {
+      writeString(out, cur);
+    }
+  }
+
+  Object read(DataInputStream in) throws IOException {
+    final byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case INT: {
+        int val = readVarInt(in);
+        return (val >>> 1) ^ -(val & 1);
+      }
+      case LONG: {
+        long val = readVarLong(in);
+        return (val >>> 1) ^ -(val & 1);
+      }
+      case DOUBLE:
+        return in.readDouble();
+      case STRING:
+        return readString(in);
+      case BYTES: {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return bytes;
+      }
+      case REF: {
+        int id = readVarInt(in);
+        String[] interfaces = new String[readVarInt(in)];
+        for (int i = 0; i < interfaces.length; i++) {
+          interfaces[i] = readString(in);
+        }
+        return resolve(new FramedRef(id, interfaces));
+      }
+      case LIST:
+      case SET: {
+        int size = readVarInt(in);
+        Collection<Object> collection = tag == LIST ? new ArrayList<Object>(size) : new LinkedHashSet<Object>();
+        for (int i = 0; i < size; i++) {
+          collection.add(read(in));
+        }
+        return collection;
+      }
+      case MAP: {
+        int size = readVarInt(in);
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        for (int i = 0; i < size; i++) {
+          map.put(read(in), read(in));
+        }
+        return map;
+      }
+      case ARRAY: {
+        Class<?> componentType;
+        try {
+          componentType = Class.forName(readString(in), false, FrameCodec.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        }
+        Object[] array = (Object[]) Array.newInstance(componentType, readVarInt(in));
+        for (int i = 0; i < array.length; i++) {
+          array[i] = read(in);
+        }
+        return array;
+      }
+      case SERIAL: {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+          {
+            enableResolveObject(true);
+          }
+
+          @Override
+          protected Object resolveObject(Object cur) throws IOException {
+            return cur instanceof FramedRef ? resolve((FramedRef) cur) : cur;
+          }
+        };
+        try {
+          return objIn.readObject();
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        } finally {
+          Util.close(objIn);
+        }
+      }
+      default:
+        throw new IOException("Malformed frame.");
+    }
+  }
+}
@@ -0,0 +1,342 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.rmi.AccessException;
+import java.rmi.ConnectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.UnexpectedException;
+import java.rmi.registry.Registry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parent-side end of the framed transport. Remote objects of the child are represented by dynamic
+ * proxies implementing the same remote interfaces as the RMI stubs, so the rest of the parent
+ * doesn't depend on which transport is used. Calls from any number of threads share one connection
+ * and are matched with their responses by request ID. Once a proxy is garbage collected the child
+ * is told to release its object.
+ * <p>
+ * Only lookups are supported from the {@link Registry} interface.
+ * 
+ * @see Settings.Builder#framedTransport(boolean)
+ */
+class FramedClient extends FrameCodec implements Registry {
+  private final Socket socket;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private final AtomicInteger nextRequestId = new AtomicInteger();
+  private final Map<Integer, CompletableFuture<Object>> pending = new ConcurrentHashMap<Integer, CompletableFuture<Object>>();
+  private final Map<Integer, ProxyReference> proxies = new HashMap<Integer, ProxyReference>();
+  private final ReferenceQueue<Object> released = new ReferenceQueue<Object>();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private final Thread reader;
+  private final Thread releaser;
+
+  private static class ProxyReference extends WeakReference<Object> {
+    final int id;
+    int refs;
+
+    ProxyReference(Object proxy, int id, ReferenceQueue<Object> queue) {
+      super(proxy, queue);
+      this.id = id;
+    }
+  }
+
+  private class Handler implements InvocationHandler {
+    private final int id;
+    private final Map<Method, Integer> methods = new HashMap<Method, Integer>();
+
+    Handler(int id, Class<?>[] interfaces) {
+      this.id = id;
+      Method[] methodsTmp = methods(interfaces);
+      for (int i = 0; i < methodsTmp.length; i++) {
+        methods.put(methodsTmp[i], i);
+      }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        if ("equals".equals(method.getName())) {
+          return proxy == args[0];
+        }
+        if ("hashCode".equals(method.getName())) {
+          return id;
+        }
+        return "FramedProxy[" + id + "]";
+      }
+      Integer index = methods.get(method);
+      if (index == null) {
+        throw new UnexpectedException("Unknown method: " + method);
+      }
+      try {
+        return call(id, index, args);
+      } catch (RemoteException | RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        for (Class<?> declared : method.getExceptionTypes()) {
+          if (declared.isInstance(t)) {
+            throw t;
+          }
+        }
+        throw new UnexpectedException(t.getMessage(), t instanceof Exception ? (Exception) t : null);
+      }
+    }
+  }
+
+  FramedClient(String host, int port) throws IOException {
+    socket = new Socket();
+    socket.setTcpNoDelay(true);
+    socket.setKeepAlive(true);
+    socket.connect(new InetSocketAddress(host, port));
+    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    reader = new Thread(() -> read(), "JBrowserDriver framed transport reader");
+    reader.setDaemon(true);
+    reader.start();
+    releaser = new Thread(() -> release(), "JBrowserDriver framed transport releaser");
+    releaser.setDaemon(true);
+    releaser.start();
+  }
+
+  void close() {
+    if (closed.compareAndSet(false, true)) {
+      Util.close(socket);
+      releaser.interrupt();
+      failPending();
+    }
+  }
+
+  private void failPending() {
+    for (Integer requestId : pending.keySet()) {
+      CompletableFuture<Object> future = pending.remove(requestId);
+      if (future != null) {
+        future.completeExceptionally(new ConnectException("Connection to browser process closed."));
+      }
+    }
+  }
+
+  private void read() {
+    try {
+      while (!closed.get()) {
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        TransportStats.FRAMED.received(length + 4);
+        DataInputStream frame = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte type = frame.readByte();
+        CompletableFuture<Object> future = pending.remove(frame.readInt());
+        if (future != null) {
+          try {
+            Object value = read(frame);
+            if (type == THROW) {
+              future.completeExceptionally(value instanceof Throwable
+                  ? (Throwable) value : new UnexpectedException(String.valueOf(value)));
+            } else {
+              future.complete(value);
+            }
+          } catch (Throwable t) {
+            future.completeExceptionally(new UnexpectedException("Could not decode response.",
+                t instanceof Exception ? (Exception) t : null));
+          }
+        }
+      }
+    } catch (Throwable t) {
+      //connection closed
+    } finally {
+      closed.set(true);
+      Util.close(socket);
+      failPending();
+    }
+  }
+
+  private void release() {
+    while (!closed.get()) {
+      try {
+        ProxyReference ref = (ProxyReference) released.remove();
+        int refs;
+        synchronized (proxies) {
+          if (proxies.get(ref.id) == ref) {
+            proxies.remove(ref.id);
+          }
+          refs = ref.refs;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeByte(RELEASE);
+        writeVarInt(frame, ref.id);
+        writeVarInt(frame, refs);
+        send(bytes);
+      } catch (InterruptedException e) {
+        return;
+      } catch (Throwable t) {}
+    }
+  }
+
+  private void send(ByteArrayOutputStream bytes) throws IOException {
+    if (closed.get()) {
+      throw new ConnectException("Connection to browser process closed.");
+    }
+    TransportStats.FRAMED.sent(bytes.size() + 4);
+    writeFrame(out, bytes);
+  }
+
+  private Object request(byte type, Object... body) throws Throwable {
+    final long start = System.nanoTime();
+    final int requestId = nextRequestId.incrementAndGet();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream frame = new DataOutputStream(bytes);
+    frame.writeByte(type);
+    frame.writeInt(requestId);
+    if (type == LOOKUP) {
+      writeString(frame, (String) body[0]);
+    } else {
+      writeVarInt(frame, (Integer) body[0]);
+      writeVarInt(frame, (Integer) body[1]);
+      Object[] args = (Object[]) body[2];
+      writeVarInt(frame, args == null ? 0 : args.length);
+      for (int i = 0; args != null && i < args.length; i++) {
+        write(frame, args[i]);
+      }
+    }
+    CompletableFuture<Object> future = new CompletableFuture<Object>();
+    pending.put(requestId, future);
+    try {
+      send(bytes);
+    } catch (IOException e) {
+      pending.remove(requestId);
+      throw e instanceof RemoteException ? e : new ConnectException(e.getMessage(), e);
+    }
+    if (closed.get()) {
+      failPending();
+    }
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {}
+      }
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    } finally {
+      TransportStats.FRAMED.call(System.nanoTime() - start);
+    }
+  }
+
+  private Object call(int id, int method, Object[] args) throws Throwable {
+    return request(CALL, id, method, args);
+  }
+
+  @Override
+  FramedRef export(Remote remote) throws IOException {
+    if (Proxy.isProxyClass(remote.getClass()) && Proxy.getInvocationHandler(remote) instanceof Handler) {
+      return new FramedRef(((Handler) Proxy.getInvocationHandler(remote)).id, new String[0]);
+    }
+    throw new NotSerializableException(remote.getClass().getName());
+  }
+
+  @Override
+  Object resolve(FramedRef ref) throws IOException {
+    synchronized (proxies) {
+      ProxyReference proxyRef = proxies.get(ref.id);
+      Object proxy = proxyRef == null ? null : proxyRef.get();
+      if (proxy == null) {
+        try {
+          Class<?>[] interfaces = interfaces(ref.interfaces);
+          proxy = Proxy.newProxyInstance(FramedClient.class.getClassLoader(),
+              interfaces, new Handler(ref.id, interfaces));
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        }
+        proxyRef = new ProxyReference(proxy, ref.id, released);
+        proxies.put(ref.id, proxyRef);
+      }
+      ++proxyRef.refs;
+      return proxy;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Remote lookup(String name) throws RemoteException, NotBoundException {
+    try {
+      return (Remote) request(LOOKUP, name);
+    } catch (RemoteException | NotBoundException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new UnexpectedException(t.getMessage(), t instanceof Exception ? (Exception) t : null);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void bind(String name, Remote obj) throws RemoteException {
+    throw new AccessException("Binding isn't supported by the framed transport.");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void unbind(String name) throws RemoteException {
+    throw new AccessException("Unbinding isn't supported by the framed transport.");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void rebind(String name, Remote obj) throws RemoteException {
+    throw new AccessException("Binding isn't supported by the framed transport.");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String[] list() throws RemoteException {
+    throw new AccessException("Listing isn't supported by the framed transport.");
+  }
+}
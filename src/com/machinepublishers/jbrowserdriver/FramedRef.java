@@ -0,0 +1,34 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+
+/**
+ * Reference to an object exported by {@link FramedServer}, as sent over the framed transport in place
+ * of the object itself.
+ */
+class FramedRef implements Serializable {
+  final int id;
+  final String[] interfaces;
+
+  FramedRef(int id, String[] interfaces) {
+    this.id = id;
+    this.interfaces = interfaces;
+  }
+}
@@ -0,0 +1,272 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Child-side end of the framed transport, an alternative to RMI which serves calls from the parent over
+ * one persistent connection. Calls carry request IDs, so the parent can pipeline them and each is
+ * executed on its own thread just as with RMI. Objects are exported when they're first returned to the parent,
+ * and unexported once the parent releases every reference it received to them.
+ * 
+ * @see Settings.Builder#framedTransport(boolean)
+ */
+class FramedServer extends FrameCodec {
+  private final ServerSocket serverSocket;
+  private final Map<String, Export> bound = new HashMap<String, Export>();
+  private final Map<Integer, Export> exports = new HashMap<Integer, Export>();
+  private final Map<Object, Export> exportsByTarget = new IdentityHashMap<Object, Export>();
+  private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "JBrowserDriver framed transport");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private int nextId;
+
+  private static class Export {
+    final int id;
+    final Object target;
+    final String[] interfaces;
+    final Method[] methods;
+    int refs;
+    int bindings;
+
+    Export(int id, Object target) {
+      this.id = id;
+      this.target = target;
+      Set<Class<?>> interfacesTmp = new LinkedHashSet<Class<?>>();
+      for (Class<?> cur = target.getClass(); cur != null; cur = cur.getSuperclass()) {
+        for (Class<?> curInterface : cur.getInterfaces()) {
+          if (curInterface != Remote.class && Remote.class.isAssignableFrom(curInterface)) {
+            interfacesTmp.add(curInterface);
+          }
+        }
+      }
+      List<String> names = new ArrayList<String>();
+      for (Class<?> cur : interfacesTmp) {
+        names.add(cur.getName());
+      }
+      this.interfaces = names.toArray(new String[0]);
+      this.methods = methods(interfacesTmp.toArray(new Class<?>[0]));
+    }
+  }
+
+  FramedServer(String host) throws IOException {
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(InetAddress.getByName(host), 0));
+    Thread thread = new Thread(() -> {
+      while (true) {
+        try {
+          final Socket socket = serverSocket.accept();
+          socket.setTcpNoDelay(true);
+          Thread reader = new Thread(() -> serve(socket), "JBrowserDriver framed transport reader");
+          reader.setDaemon(true);
+          reader.start();
+        } catch (Throwable t) {
+          if (serverSocket.isClosed()) {
+            return;
+          }
+          LogsServer.instance().exception(t);
+        }
+      }
+    }, "JBrowserDriver framed transport listener");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  void bind(String name, Remote remote) {
+    synchronized (exports) {
+      unbind(name);
+      Export export = export(remote, false);
+      ++export.bindings;
+      bound.put(name, export);
+    }
+  }
+
+  void unbind(String name) {
+    synchronized (exports) {
+      Export export = bound.remove(name);
+      if (export != null) {
+        --export.bindings;
+        release(export, 0);
+      }
+    }
+  }
+
+  private Export export(Object target, boolean ref) {
+    synchronized (exports) {
+      Export export = exportsByTarget.get(target);
+      if (export == null) {
+        export = new Export(++nextId, target);
+        exports.put(export.id, export);
+        exportsByTarget.put(target, export);
+      }
+      if (ref) {
+        ++export.refs;
+      }
+      return export;
+    }
+  }
+
+  private void release(Export export, int refs) {
+    synchronized (exports) {
+      export.refs -= refs;
+      if (export.refs <= 0 && export.bindings <= 0) {
+        exports.remove(export.id);
+        exportsByTarget.remove(export.target);
+      }
+    }
+  }
+
+  @Override
+  FramedRef export(Remote remote) {
+    Export export = export(remote, true);
+    return new FramedRef(export.id, export.interfaces);
+  }
+
+  @Override
+  Object resolve(FramedRef ref) throws IOException {
+    synchronized (exports) {
+      Export export = exports.get(ref.id);
+      if (export == null) {
+        throw new NoSuchObjectException("No such object: " + ref.id);
+      }
+      return export.target;
+    }
+  }
+
+  private void serve(Socket socket) {
+    DataInputStream in = null;
+    DataOutputStream out = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      while (true) {
+        final DataInputStream frame = readFrame(in);
+        final byte type = frame.readByte();
+        if (type == RELEASE) {
+          int id = readVarInt(frame);
+          int refs = readVarInt(frame);
+          synchronized (exports) {
+            Export export = exports.get(id);
+            if (export != null) {
+              release(export, refs);
+            }
+          }
+        } else {
+          final DataOutputStream response = out;
+          executor.execute(() -> respond(type, frame, response));
+        }
+      }
+    } catch (Throwable t) {
+      //parent disconnected
+    } finally {
+      Util.close(in);
+      Util.close(out);
+      Util.close(socket);
+    }
+  }
+
+  private void respond(byte type, DataInputStream frame, DataOutputStream out) {
+    int requestId = -1;
+    Object result = null;
+    Throwable thrown = null;
+    try {
+      requestId = frame.readInt();
+      if (type == LOOKUP) {
+        String name = readString(frame);
+        synchronized (exports) {
+          Export export = bound.get(name);
+          if (export == null) {
+            throw new NotBoundException(name);
+          }
+          result = export.target;
+        }
+      } else if (type == CALL) {
+        Export export;
+        synchronized (exports) {
+          export = exports.get(readVarInt(frame));
+        }
+        if (export == null) {
+          throw new NoSuchObjectException("Object already released.");
+        }
+        Method method = export.methods[readVarInt(frame)];
+        Object[] args = new Object[readVarInt(frame)];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = read(frame);
+        }
+        try {
+          result = method.invoke(export.target, args);
+        } catch (InvocationTargetException e) {
+          thrown = e.getCause();
+        }
+      } else {
+        throw new IOException("Malformed frame.");
+      }
+    } catch (Throwable t) {
+      thrown = t;
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream response = new DataOutputStream(bytes);
+      try {
+        response.writeByte(thrown == null ? RETURN : THROW);
+        response.writeInt(requestId);
+        write(response, thrown == null ? result : thrown);
+      } catch (Throwable t) {
+        bytes.reset();
+        response.writeByte(THROW);
+        response.writeInt(requestId);
+        write(response, new RemoteException("Could not encode response: " + t.getMessage()));
+      }
+      writeFrame(out, bytes);
+    } catch (Throwable t) {
+      LogsServer.instance().exception(t);
+    }
+  }
+}
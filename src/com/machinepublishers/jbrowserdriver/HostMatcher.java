@@ -0,0 +1,168 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches hosts against block lists. Rules are stored in a trie keyed by the characters of each host in
+ * reverse, so a lookup walks the host once from its last character and checks for a rule at each label
+ * boundary, without allocating.
+ */
+class HostMatcher {
+  private static final String BUILT_IN = "/com/machinepublishers/jbrowserdriver/ad-hosts.txt";
+  private static final byte BLOCK = 1;
+  private static final byte ALLOW = 2;
+  private static final Map<List<File>, HostMatcher> adBlockers = new ConcurrentHashMap<List<File>, HostMatcher>();
+  private final Node root = new Node();
+
+  private static class Node {
+    private char[] keys = new char[0];
+    private Node[] children = new Node[0];
+    private byte rule;
+
+    Node child(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      return index < 0 ? null : children[index];
+    }
+
+    Node add(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      if (index >= 0) {
+        return children[index];
+      }
+      index = -index - 1;
+      char[] newKeys = new char[keys.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(keys, 0, newKeys, 0, index);
+      System.arraycopy(children, 0, newChildren, 0, index);
+      newKeys[index] = key;
+      newChildren[index] = new Node();
+      System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+      System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+      keys = newKeys;
+      children = newChildren;
+      return newChildren[index];
+    }
+  }
+
+  /**
+   * @return Matcher for the built-in ad hosts plus the given lists, shared by all sessions using the same lists
+   */
+  static HostMatcher adBlocker(List<File> lists) {
+    return adBlockers.computeIfAbsent(lists, HostMatcher::load);
+  }
+
+  private static HostMatcher load(List<File> lists) {
+    HostMatcher matcher = new HostMatcher();
+    try (InputStream builtIn = HostMatcher.class.getResourceAsStream(BUILT_IN)) {
+      matcher.addAll(new BufferedReader(new InputStreamReader(builtIn, "utf-8")));
+    } catch (Throwable t) {
+      LogsServer.instance().exception(t);
+    }
+    for (File list : lists) {
+      try (BufferedReader reader = Files.newBufferedReader(list.toPath())) {
+        matcher.addAll(reader);
+      } catch (Throwable t) {
+        LogsServer.instance().exception(t);
+      }
+    }
+    return matcher;
+  }
+
+  private void addAll(BufferedReader reader) throws Exception {
+    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+      addRule(line);
+    }
+  }
+
+  /**
+   * Adds a rule: a plain host, a hosts file entry, or an EasyList-style host rule. Other lines are ignored.
+   */
+  void addRule(String line) {
+    line = line.trim();
+    if (line.isEmpty() || line.startsWith("!") || line.startsWith("#") || line.startsWith("[")) {
+      return;
+    }
+    byte rule = BLOCK;
+    if (line.startsWith("@@")) {
+      rule = ALLOW;
+      line = line.substring(2);
+    }
+    String host;
+    if (line.startsWith("||")) {
+      host = line.endsWith("^") ? line.substring(2, line.length() - 1) : line.substring(2);
+    } else {
+      String[] parts = line.split("\\s+");
+      if (parts.length > 1 && (parts[0].equals("0.0.0.0") || parts[0].equals("127.0.0.1")
+          || parts[0].equals("::") || parts[0].equals("::1"))) {
+        host = parts[1];
+      } else if (parts.length == 1 && rule == BLOCK) {
+        host = parts[0];
+      } else {
+        return;
+      }
+    }
+    host = host.toLowerCase();
+    if (host.isEmpty() || host.equals("localhost") || !isHost(host)) {
+      return;
+    }
+    Node node = root;
+    for (int i = host.length() - 1; i >= 0; i--) {
+      node = node.add(host.charAt(i));
+    }
+    node.rule = rule;
+  }
+
+  private static boolean isHost(String host) {
+    for (int i = 0; i < host.length(); i++) {
+      char c = host.charAt(i);
+      if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '.' || c == '-' || c == '_')) {
+        return false;
+      }
+    }
+    return host.charAt(0) != '.' && host.charAt(host.length() - 1) != '.';
+  }
+
+  /**
+   * @return Whether the host or one of its parent domains is blocked, according to the most specific matching rule
+   */
+  boolean matches(String host) {
+    boolean blocked = false;
+    Node node = root;
+    for (int i = host.length() - 1; i >= 0 && node != null; i--) {
+      char c = host.charAt(i);
+      if (c == '.' && node.rule != 0) {
+        blocked = node.rule == BLOCK;
+      }
+      node = node.child(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+    }
+    if (node != null && node.rule != 0) {
+      blocked = node.rule == BLOCK;
+    }
+    return blocked;
+  }
+}
@@ -0,0 +1,272 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Finds where to inject a script into the start of an HTML document: after the opening head tag, or
+ * else after the opening html tag, or else before the document if it has a body tag. Comments are skipped,
+ * and a byte order mark takes precedence over the declared charset.
+ * <p>
+ * Documents in ASCII-compatible charsets are scanned byte by byte without being decoded. Other charsets
+ * (UTF-16 and UTF-32) are decoded first, which is bounded by the size of the prologue.
+ */
+class HtmlPrologue {
+  private static final byte[] ASCII_PROBE = "<!-->".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * Insertion point wasn't found, so the document isn't altered.
+   */
+  static final int NONE = 0;
+  /**
+   * Insert after the opening head tag.
+   */
+  static final int HEAD = 1;
+  /**
+   * Insert a head element after the opening html tag.
+   */
+  static final int HTML = 2;
+  /**
+   * Wrap the document in html and head elements.
+   */
+  static final int BODY = 3;
+
+  private final int kind;
+  private final int offset;
+  private final boolean decided;
+  private final Charset charset;
+
+  private HtmlPrologue(int kind, int offset, boolean decided, Charset charset) {
+    this.kind = kind;
+    this.offset = offset;
+    this.decided = decided;
+    this.charset = charset;
+  }
+
+  /**
+   * @return Where to insert, one of {@link #NONE}, {@link #HEAD}, {@link #HTML}, or {@link #BODY}
+   */
+  int kind() {
+    return kind;
+  }
+
+  /**
+   * @return Byte offset at which to insert
+   */
+  int offset() {
+    return offset;
+  }
+
+  /**
+   * @return Whether more of the document can't change the result
+   */
+  boolean decided() {
+    return decided;
+  }
+
+  /**
+   * @return Charset of the document, which is the one signified by its byte order mark if it has one
+   */
+  Charset charset() {
+    return charset;
+  }
+
+  /**
+   * @param bytes
+   *          Start of the document
+   * @param len
+   *          Number of bytes available
+   * @param charsetName
+   *          Declared charset
+   * @param complete
+   *          Whether the bytes are the entire document
+   */
+  static HtmlPrologue scan(byte[] bytes, int len, String charsetName, boolean complete) {
+    Charset charset;
+    int bom = 0;
+    if (len >= 3 && (bytes[0] & 0xff) == 0xef && (bytes[1] & 0xff) == 0xbb && (bytes[2] & 0xff) == 0xbf) {
+      charset = StandardCharsets.UTF_8;
+      bom = 3;
+    } else if (len >= 2 && (bytes[0] & 0xff) == 0xfe && (bytes[1] & 0xff) == 0xff) {
+      charset = StandardCharsets.UTF_16BE;
+      bom = 2;
+    } else if (len >= 2 && (bytes[0] & 0xff) == 0xff && (bytes[1] & 0xff) == 0xfe) {
+      charset = StandardCharsets.UTF_16LE;
+      bom = 2;
+    } else {
+      charset = Charset.forName(charsetName);
+      if (StandardCharsets.UTF_16.equals(charset)) {
+        //big endian when unmarked
+        charset = StandardCharsets.UTF_16BE;
+      }
+    }
+
+    if (Arrays.equals(ASCII_PROBE, "<!-->".getBytes(charset))) {
+      HtmlPrologue found = scan(new ByteChars(bytes, bom, len), charset, complete);
+      return found.kind == NONE ? found : new HtmlPrologue(found.kind, bom + found.offset, found.decided, charset);
+    }
+
+    CharBuffer decoded = charset.decode(ByteBuffer.wrap(bytes, bom, len - bom));
+    HtmlPrologue found = scan(decoded, charset, complete);
+    if (found.kind == NONE || found.offset == 0) {
+      return new HtmlPrologue(found.kind, bom, found.decided, charset);
+    }
+    try {
+      CharsetEncoder encoder = charset.newEncoder();
+      int encoded = encoder.encode(CharBuffer.wrap(decoded, 0, found.offset)).remaining();
+      return new HtmlPrologue(found.kind, bom + encoded, found.decided, charset);
+    } catch (Throwable t) {
+      return new HtmlPrologue(NONE, 0, true, charset);
+    }
+  }
+
+  private static HtmlPrologue scan(CharSequence chars, Charset charset, boolean complete) {
+    final int len = chars.length();
+    int htmlEnd = -1;
+    for (int i = 0; i < len; i++) {
+      if (chars.charAt(i) != '<') {
+        continue;
+      }
+      if (startsWith(chars, i, "<!--")) {
+        int end = indexOf(chars, i + 4, "-->");
+        if (end < 0) {
+          break;
+        }
+        i = end + 2;
+      } else if (isTag(chars, i, "head", complete)) {
+        int end = indexOf(chars, i + 5, ">");
+        if (end < 0) {
+          break;
+        }
+        return new HtmlPrologue(HEAD, end + 1, true, charset);
+      } else if (htmlEnd < 0 && isTag(chars, i, "html", complete)) {
+        int end = indexOf(chars, i + 5, ">");
+        if (end < 0) {
+          break;
+        }
+        htmlEnd = end + 1;
+        i = end;
+      } else if (isTag(chars, i, "body", complete)) {
+        //a head can't come after the body
+        return htmlEnd < 0
+            ? new HtmlPrologue(BODY, 0, true, charset)
+            : new HtmlPrologue(HTML, htmlEnd, true, charset);
+      }
+    }
+    return htmlEnd < 0
+        ? new HtmlPrologue(NONE, 0, complete, charset)
+        : new HtmlPrologue(HTML, htmlEnd, complete, charset);
+  }
+
+  private static boolean startsWith(CharSequence chars, int start, String prefix) {
+    if (start + prefix.length() > chars.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (chars.charAt(start + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf(CharSequence chars, int start, String target) {
+    for (int i = start; i + target.length() <= chars.length(); i++) {
+      if (startsWith(chars, i, target)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Matches <code>&lt;name\b</code> case-insensitively.
+   */
+  private static boolean isTag(CharSequence chars, int start, String name, boolean complete) {
+    int end = start + 1 + name.length();
+    if (end > chars.length()) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      if (Character.toLowerCase(chars.charAt(start + 1 + i)) != name.charAt(i)) {
+        return false;
+      }
+    }
+    if (end == chars.length()) {
+      //the tag name might continue in bytes not read yet
+      return complete;
+    }
+    char next = chars.charAt(end);
+    return !(Character.isLetterOrDigit(next) || next == '_');
+  }
+
+  /**
+   * Views bytes of an ASCII-compatible charset as characters. Bytes outside the ASCII range never match
+   * the markup being scanned for, so multibyte sequences needn't be decoded.
+   */
+  private static class ByteChars implements CharSequence {
+    private final byte[] bytes;
+    private final int start;
+    private final int end;
+
+    ByteChars(byte[] bytes, int start, int end) {
+      this.bytes = bytes;
+      this.start = start;
+      this.end = end;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char charAt(int index) {
+      int b = bytes[start + index] & 0xff;
+      return b < 0x80 ? (char) b : '\uFFFD';
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      return new ByteChars(bytes, start + from, start + to);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+  }
+}
@@ -17,32 +17,209 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.Closeable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
 import org.apache.http.client.cache.HttpCacheEntry;
 import org.apache.http.client.cache.HttpCacheStorage;
 import org.apache.http.client.cache.HttpCacheUpdateCallback;
 import org.apache.http.client.cache.HttpCacheUpdateException;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.impl.client.cache.HeapResource;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
 
+/**
+ * Stores cache entries in append-only segment files, indexed in memory.
+ * <p>
+ * Each process appends to its own segment, so processes sharing a cache directory never contend on writes.
+ * Records are checksummed, and each process indexes the segments written by others as they grow, newest record
+ * winning. Reads are positional reads of a single record, located through a concurrent index, without locking.
+ * Entries are encoded in a compact binary format rather than with Java serialization.
+ * <p>
+ * A background compactor bounds the directory by size and by time since last use, and reclaims the space of
+ * superseded records once they make up most of the segments it can rewrite. Uses are recorded as small
+ * touch records, at most once a minute per entry, so every process sees a shared least-recently-used order.
+ * Only one process compacts at a time, holding a lock file, and it only rewrites segments that no process is
+ * appending to (writers hold a lock on their active segment). Surviving records are copied into the compacting
+ * process's own segment before the old segments are deleted; other processes drop a deleted segment from
+ * their index once they've indexed its replacement.
+ * <p>
+ * Keys hash to one of a fixed number of stripes. Within a process, reads share a stripe's read lock and never
+ * block each other, while puts, removes and updates take its write lock. Across processes, updates hold an
+ * exclusive lock on the stripe's byte in a shared lock file while they read, modify and append an entry.
+ */
 class HttpCache implements HttpCacheStorage {
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".jbdcache";
+  private static final int MAGIC = 0x4a424443;
+  private static final int HEADER_SIZE = 8;
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 2;
+  private static final byte TOUCH = 3;
+  private static final long SEGMENT_MAX = 64 * 1024 * 1024;
+  private static final long REFRESH_INTERVAL = 500;
+  private static final long TOUCH_INTERVAL = 60 * 1000;
+  private static final long COMPACT_INTERVAL = 60 * 1000;
+  private static final String COMPACT_LOCK = "compact.lock";
+  private static final String STRIPE_LOCK = "stripes.lock";
+  private static final String DELETED_SUFFIX = ".deleted";
+  private static final Pattern LEGACY_ENTRY = Pattern.compile("[0-9a-f]{40}");
+  private static final int STRIPES = 64;
+
+  private static final Map<String, HttpCache> instances = new HashMap<String, HttpCache>();
+
   private final File cacheDir;
+  private final long maxSize;
+  private final long maxAge;
+  private final Map<String, Location> index = new ConcurrentHashMap<String, Location>();
+  private final Map<String, Segment> segments = new ConcurrentHashMap<String, Segment>();
+  private final AtomicReference<Segment> active = new AtomicReference<Segment>();
+  private final AtomicLong lastRefresh = new AtomicLong();
+  private final Object writeLock = new Object();
+  private final Object refreshLock = new Object();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private final Thread compactor;
+  private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPES];
+  private final FileChannel stripeLocks;
+  private final Logger logger;
+  private int refs;
+
+  private static class Segment {
+    private final File file;
+    private final FileChannel channel;
+    private final AtomicLong indexed = new AtomicLong();
+    private final FileLock lock;
+
+    Segment(File file, boolean write) throws IOException {
+      this.file = file;
+      this.channel = write
+          ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+          : FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      this.lock = write ? channel.lock() : null;
+    }
 
-  HttpCache(File cacheDir) {
+    /**
+     * @return Whether a process is still appending to this segment
+     */
+    boolean inUse() throws IOException {
+      if (lock != null) {
+        return lock.isValid();
+      }
+      try {
+        FileLock probe = channel.tryLock(0, Long.MAX_VALUE, true);
+        if (probe != null) {
+          probe.release();
+          return false;
+        }
+      } catch (OverlappingFileLockException e) {
+        //locked by this process
+      }
+      return true;
+    }
+  }
+
+  private static class Location {
+    private final Segment segment;
+    private final long offset;
+    private final int length;
+    private final long time;
+    private final AtomicLong accessed;
+
+    Location(Segment segment, long offset, int length, long time, long accessed) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.time = time;
+      this.accessed = new AtomicLong(Math.max(time, accessed));
+    }
+  }
+
+  /**
+   * Opens the cache for a directory, sharing it with anything else in this JVM that has it open. File locks
+   * are held by the whole JVM, so only one instance per directory can take part in cross-process locking.
+   * The size and age limits of the first to open it apply. Each open must be followed by {@link #close()}.
+   * 
+   * @param logger
+   *          Where to log outside of a browser process, or null to use the browser's logs
+   */
+  static HttpCache open(File cacheDir, long maxSize, long maxAge, Logger logger) throws IOException {
+    String path = cacheDir.getCanonicalPath();
+    synchronized (instances) {
+      HttpCache cache = instances.get(path);
+      if (cache == null) {
+        cache = new HttpCache(cacheDir, maxSize, maxAge, logger);
+        instances.put(path, cache);
+      }
+      ++cache.refs;
+      return cache;
+    }
+  }
+
+  private HttpCache(File cacheDir, long maxSize, long maxAge, Logger logger) {
     this.cacheDir = cacheDir;
+    this.logger = logger;
+    this.maxSize = maxSize;
+    this.maxAge = maxAge;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new ReentrantReadWriteLock();
+    }
+    FileChannel stripeLocksTmp = null;
+    try {
+      stripeLocksTmp = FileChannel.open(new File(cacheDir, STRIPE_LOCK).toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (Throwable t) {
+      exception(t);
+    }
+    stripeLocks = stripeLocksTmp;
+    deleteLegacy();
+    refresh(true);
+    compactor = new Thread(() -> {
+      while (!closed.get()) {
+        try {
+          Thread.sleep(COMPACT_INTERVAL);
+          compact();
+        } catch (InterruptedException e) {
+          return;
+        } catch (Throwable t) {
+          exception(t);
+        }
+      }
+    }, "JBrowserDriver cache compactor");
+    compactor.setDaemon(true);
+    compactor.start();
   }
 
   /**
@@ -50,8 +227,17 @@ class HttpCache implements HttpCacheStorage {
    */
   @Override
   public void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
-    HttpCacheEntry entry = callback.update(getEntry(key));
-    putEntry(key, entry);
+    final int stripe = stripe(key);
+    Lock lock = stripes[stripe].writeLock();
+    lock.lock();
+    try (FileLock fileLock = stripeLocks == null ? null : stripeLocks.lock(stripe, 1, false)) {
+      //pick up an update to this entry just made by another process
+      refresh(true);
+      HttpCacheEntry entry = callback.update(getEntry(key));
+      putEntry(key, entry);
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -59,10 +245,12 @@ class HttpCache implements HttpCacheStorage {
    */
   @Override
   public void removeEntry(String key) throws IOException {
-    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), false, false)) {
-      lock.file.delete();
-    } catch (FileNotFoundException e) {
-      //ignore
+    Lock lock = stripes[stripe(key)].writeLock();
+    lock.lock();
+    try {
+      append(key, REMOVE, null);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -71,11 +259,12 @@ class HttpCache implements HttpCacheStorage {
    */
   @Override
   public void putEntry(String key, HttpCacheEntry entry) throws IOException {
-    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), false, true)) {
-      BufferedOutputStream bufferOut = new BufferedOutputStream(lock.streamOut);
-      try (ObjectOutputStream objectOut = new ObjectOutputStream(bufferOut)) {
-        objectOut.writeObject(entry);
-      }
+    Lock lock = stripes[stripe(key)].writeLock();
+    lock.lock();
+    try {
+      append(key, PUT, entry);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -84,116 +273,556 @@ class HttpCache implements HttpCacheStorage {
    */
   @Override
   public HttpCacheEntry getEntry(String key) throws IOException {
-    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), true, false)) {
-      BufferedInputStream bufferIn = new BufferedInputStream(lock.streamIn);
-      try (ObjectInputStream objectIn = new ObjectInputStream(bufferIn)) {
-        return (HttpCacheEntry) objectIn.readObject();
+    Lock lock = stripes[stripe(key)].readLock();
+    lock.lock();
+    try {
+      return lookup(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static int stripe(String key) {
+    int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+  }
+
+  private HttpCacheEntry lookup(String key) {
+    Location location = index.get(key);
+    if (location == null && refresh(false)) {
+      location = index.get(key);
+    }
+    for (int attempt = 0; location != null && attempt < 2; attempt++) {
+      try {
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        read(location.segment.channel, record, location.offset);
+        HttpCacheEntry entry = decodeEntry(record, key);
+        touch(key, location);
+        return entry;
       } catch (Throwable t) {
-        LogsServer.instance().exception(t);
+        //segment was compacted away, or the record is unreadable
+        if (index.remove(key, location)) {
+          return null;
+        }
+        location = index.get(key);
       }
-    } catch (FileNotFoundException e) {
-      return null;
     }
     return null;
   }
 
-  private static class Lock implements Closeable {
-    private static final int MAX_RETRIES = 50;
-    private static final int RETRY_SLEEP = 100;
-    private static final Set<String> locks = new HashSet<String>();
-    private String lockName;
-    private File file;
-    private FileLock fileLock;
-    private FileInputStream streamIn;
-    private FileOutputStream streamOut;
-    private FileChannel channel;
+  private void touch(String key, Location location) {
+    final long now = System.currentTimeMillis();
+    final long accessed = location.accessed.get();
+    if (now - accessed > TOUCH_INTERVAL && location.accessed.compareAndSet(accessed, now)) {
+      try {
+        append(key, TOUCH, null);
+      } catch (Throwable t) {
+        exception(t);
+      }
+    }
+  }
+
+  private void append(String key, byte type, HttpCacheEntry entry) throws IOException {
+    final long time = System.currentTimeMillis();
+    synchronized (writeLock) {
+      index(key, type, write(encode(key, type, time, entry), time, time));
+    }
+  }
 
-    Lock(File file, boolean read, boolean create) throws IOException {
-      this.file = file;
-      this.lockName = file.getAbsolutePath();
-      synchronized (locks) {
-        while (true) {
-          try {
-            if (!locks.contains(lockName)) {
-              locks.add(lockName);
-              break;
-            } else {
-              locks.wait();
+  private Location write(byte[] record, long time, long accessed) throws IOException {
+    synchronized (writeLock) {
+      Segment segment = active.get();
+      if (segment == null || segment.channel.size() + record.length > SEGMENT_MAX) {
+        Segment prev = segment;
+        segment = new Segment(new File(cacheDir, SEGMENT_PREFIX + Util.randomFileName() + SEGMENT_SUFFIX), true);
+        segments.put(segment.file.getName(), segment);
+        active.set(segment);
+        if (prev != null) {
+          prev.lock.release();
+        }
+      }
+      final long offset = segment.channel.size();
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      while (buffer.hasRemaining()) {
+        segment.channel.write(buffer, offset + buffer.position());
+      }
+      segment.indexed.set(offset + record.length);
+      return new Location(segment, offset, record.length, time, accessed);
+    }
+  }
+
+  private void index(String key, byte type, Location location) {
+    if (type == PUT) {
+      index.merge(key, location, (prev, cur) -> cur.time >= prev.time ? cur : prev);
+    } else if (type == REMOVE) {
+      index.computeIfPresent(key, (k, prev) -> location.time >= prev.time ? null : prev);
+    } else if (type == TOUCH) {
+      Location cur = index.get(key);
+      if (cur != null) {
+        for (long accessed; (accessed = cur.accessed.get()) < location.time
+            && !cur.accessed.compareAndSet(accessed, location.time););
+      }
+    }
+  }
+
+  /**
+   * Indexes records appended to segments by other processes since the last refresh.
+   * 
+   * @return Whether anything new was indexed
+   */
+  private boolean refresh(boolean force) {
+    final long now = System.currentTimeMillis();
+    final long last = lastRefresh.get();
+    if (!force && (now - last < REFRESH_INTERVAL || !lastRefresh.compareAndSet(last, now))) {
+      return false;
+    }
+    boolean found = false;
+    synchronized (refreshLock) {
+      File[] files = cacheDir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          String name = file.getName();
+          if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && !deleted(file)) {
+            try {
+              Segment segment = segments.get(name);
+              if (segment == null) {
+                segment = new Segment(file, false);
+                segments.put(name, segment);
+              }
+              if (segment != active.get()) {
+                found |= scan(segment);
+              }
+            } catch (Throwable t) {
+              exception(t);
             }
-          } catch (Throwable t) {}
+          }
         }
       }
-      for (int i = 0; i < MAX_RETRIES; i++) {
-        if (i > 0) {
-          try {
-            Thread.sleep(RETRY_SLEEP);
-          } catch (InterruptedException e2) {}
+      for (Segment segment : segments.values()) {
+        if (deleted(segment.file)) {
+          //compacted by another process, whose copies were indexed above
+          segments.remove(segment.file.getName());
+          index.values().removeIf(location -> location.segment == segment);
+          Util.close(segment.channel);
         }
-        try {
-          if (create) {
-            file.createNewFile();
-          }
-          if (read) {
-            streamIn = new FileInputStream(file);
-            channel = streamIn.getChannel();
-          } else {
-            streamOut = new FileOutputStream(file);
-            channel = streamOut.getChannel();
-          }
-          fileLock = channel.lock(0, Long.MAX_VALUE, read);
-          break;
-        } catch (Throwable t) {
-          if (!create && t instanceof FileNotFoundException) {
-            close();
-            throw t;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Evicts entries unused for longer than the maximum age, and the least recently used entries while the
+   * directory is larger than its maximum size, by rewriting the segments no process is appending to.
+   * Those segments are also rewritten when more than half of them is superseded records.
+   */
+  void compact() throws IOException {
+    try (FileChannel lockChannel = FileChannel.open(new File(cacheDir, COMPACT_LOCK).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = tryLock(lockChannel)) {
+      if (lock == null) {
+        return;
+      }
+      deleteCompacted();
+      refresh(true);
+      final long now = System.currentTimeMillis();
+      long size = 0;
+      long sealedSize = 0;
+      Set<Segment> sealed = new HashSet<Segment>();
+      for (Segment segment : segments.values()) {
+        size += segment.channel.size();
+        if (segment != active.get() && !segment.inUse()) {
+          sealed.add(segment);
+          sealedSize += segment.channel.size();
+        }
+      }
+      List<Map.Entry<String, Location>> live = new ArrayList<Map.Entry<String, Location>>(index.entrySet());
+      boolean expired = maxAge > 0 && live.stream().anyMatch(entry -> now - entry.getValue().accessed.get() > maxAge);
+      long liveSealedSize = 0;
+      for (Map.Entry<String, Location> entry : live) {
+        if (sealed.contains(entry.getValue().segment)) {
+          liveSealedSize += entry.getValue().length;
+        }
+      }
+      boolean superseded = sealedSize > 2 * liveSealedSize;
+      if (sealed.isEmpty() || (!expired && !superseded && (maxSize <= 0 || size <= maxSize))) {
+        return;
+      }
+      live.sort((a, b) -> Long.compare(b.getValue().accessed.get(), a.getValue().accessed.get()));
+      final long target = maxSize * 3 / 4;
+      long kept = 0;
+      List<Map.Entry<String, Location>> keep = new ArrayList<Map.Entry<String, Location>>();
+      List<Map.Entry<String, Location>> evict = new ArrayList<Map.Entry<String, Location>>();
+      for (Map.Entry<String, Location> entry : live) {
+        Location location = entry.getValue();
+        boolean keepEntry = (maxAge <= 0 || now - location.accessed.get() <= maxAge)
+            && (maxSize <= 0 || kept + location.length <= target);
+        if (keepEntry) {
+          kept += location.length;
+        }
+        if (sealed.contains(location.segment)) {
+          (keepEntry ? keep : evict).add(entry);
+        }
+      }
+
+      //keys dropped along with the sealed segments, by the time as of which they're dropped
+      Map<String, Long> dropped = new HashMap<String, Long>();
+      for (Map.Entry<String, Location> entry : evict) {
+        dropped.put(entry.getKey(), entry.getValue().time);
+      }
+      for (Segment segment : sealed) {
+        for (Prefix prefix : prefixes(segment)) {
+          Location cur = index.get(prefix.key);
+          if (prefix.type == REMOVE && (cur == null || cur.time <= prefix.time)) {
+            dropped.merge(prefix.key, prefix.time, Math::max);
           }
-          if (i + 1 == MAX_RETRIES) {
-            LogsServer.instance().exception(t);
-            close();
-            if (t instanceof IOException) {
-              throw t;
+        }
+      }
+      //an older version left in another segment would be indexed again by a process scanning it later,
+      //so those keys need a tombstone that outlives the sealed segments
+      Set<String> tombstones = new HashSet<String>();
+      if (!dropped.isEmpty()) {
+        for (Segment segment : segments.values()) {
+          if (!sealed.contains(segment)) {
+            for (Prefix prefix : prefixes(segment)) {
+              Long time = dropped.get(prefix.key);
+              if (prefix.type == PUT && time != null && prefix.time <= time) {
+                tombstones.add(prefix.key);
+              }
             }
-            throw new IOException(t);
           }
-          closeStreams();
         }
       }
+      for (String key : tombstones) {
+        long time = dropped.get(key);
+        write(encode(key, REMOVE, time, null), time, time);
+      }
+
+      for (Map.Entry<String, Location> entry : keep) {
+        Location location = entry.getValue();
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        read(location.segment.channel, record, location.offset);
+        synchronized (writeLock) {
+          final long accessed = location.accessed.get();
+          Location copy = write(record.array(), location.time, accessed);
+          if (index.replace(entry.getKey(), location, copy) && accessed > location.time) {
+            //carry over the last use, which was recorded in a touch record that's being discarded
+            write(encode(entry.getKey(), TOUCH, accessed, null), accessed, accessed);
+          }
+        }
+      }
+      int evicted = 0;
+      for (Map.Entry<String, Location> entry : evict) {
+        if (index.remove(entry.getKey(), entry.getValue())) {
+          ++evicted;
+        }
+      }
+      for (Segment segment : sealed) {
+        segments.remove(segment.file.getName());
+        index.values().removeIf(location -> location.segment == segment);
+        Util.close(segment.channel);
+        //marked first, so a process that can't see the deletion yet (or ever, if the file can't be deleted
+        //while others have it open) won't index the segment again as a new one
+        new File(segment.file.getPath() + DELETED_SUFFIX).createNewFile();
+        if (segment.file.delete()) {
+          new File(segment.file.getPath() + DELETED_SUFFIX).delete();
+        }
+      }
+      trace("Cache compacted: segments=" + sealed.size() + ", evicted=" + evicted
+          + ", tombstones=" + tombstones.size() + ", bytesRewritten=" + sealedSize + ", bytesBefore=" + size);
     }
+  }
 
-    private void closeStreams() {
-      if (streamIn != null) {
-        try {
-          streamIn.close();
-        } catch (Throwable t) {
-          LogsServer.instance().exception(t);
+  /**
+   * Deletes entries stored by earlier versions, one Java-serialized file per entry named by the SHA-1 of its key.
+   * They'd otherwise be left behind in a reused cache directory, unused and uncounted toward its size limit.
+   */
+  private void deleteLegacy() {
+    File[] files = cacheDir.listFiles();
+    int deleted = 0;
+    if (files != null) {
+      for (File file : files) {
+        if (LEGACY_ENTRY.matcher(file.getName()).matches() && file.isFile() && file.delete()) {
+          ++deleted;
         }
       }
-      if (streamOut != null) {
-        try {
-          streamOut.close();
-        } catch (Throwable t) {
-          LogsServer.instance().exception(t);
+    }
+    if (deleted > 0) {
+      trace("Deleted " + deleted + " cache entries stored by an earlier version.");
+    }
+  }
+
+  private static boolean deleted(File segment) {
+    return !segment.exists() || new File(segment.getPath() + DELETED_SUFFIX).exists();
+  }
+
+  /**
+   * Retries deleting compacted segments that couldn't be deleted before, once nothing has them open.
+   */
+  private void deleteCompacted() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File marker : files) {
+        String name = marker.getName();
+        if (name.endsWith(SEGMENT_SUFFIX + DELETED_SUFFIX)) {
+          File segment = new File(cacheDir, name.substring(0, name.length() - DELETED_SUFFIX.length()));
+          if (!segment.exists() || segment.delete()) {
+            marker.delete();
+          }
         }
       }
     }
+  }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void close() {
-      if (fileLock != null && channel != null && channel.isOpen()) {
-        try {
-          fileLock.release();
-        } catch (Throwable t) {
-          LogsServer.instance().exception(t);
+  private static class Prefix {
+    private final byte type;
+    private final long time;
+    private final String key;
+
+    Prefix(byte type, long time, String key) {
+      this.type = type;
+      this.time = time;
+      this.key = key;
+    }
+  }
+
+  /**
+   * @return Type, time and key of each record indexed in the segment, without reading entries
+   */
+  private static List<Prefix> prefixes(Segment segment) throws IOException {
+    List<Prefix> prefixes = new ArrayList<Prefix>();
+    final long end = segment.indexed.get();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 1 + 8 + 4);
+    for (long offset = 0; offset < end;) {
+      header.clear();
+      read(segment.channel, header, offset);
+      header.flip();
+      header.getInt();
+      int length = header.getInt();
+      byte type = header.get();
+      long time = header.getLong();
+      int keyLength = header.getInt();
+      ByteBuffer key = ByteBuffer.allocate(Math.max(0, keyLength));
+      read(segment.channel, key, offset + header.capacity());
+      prefixes.add(new Prefix(type, time, keyLength < 0 ? null : new String(key.array(), StandardCharsets.UTF_8)));
+      offset += length;
+    }
+    return prefixes;
+  }
+
+  private static FileLock tryLock(FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      //another cache in this process is compacting
+      return null;
+    }
+  }
+
+  private boolean scan(Segment segment) throws IOException {
+    boolean found = false;
+    final long size = segment.channel.size();
+    long offset = segment.indexed.get();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (offset + HEADER_SIZE <= size) {
+      header.clear();
+      read(segment.channel, header, offset);
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        break;
+      }
+      int length = header.getInt();
+      if (length < HEADER_SIZE || offset + length > size) {
+        //still being written
+        break;
+      }
+      ByteBuffer record = ByteBuffer.allocate(length);
+      read(segment.channel, record, offset);
+      DataInputStream in = verify(record);
+      if (in == null) {
+        break;
+      }
+      byte type = in.readByte();
+      long time = in.readLong();
+      String key = readString(in);
+      index(key, type, new Location(segment, offset, length, time, time));
+      found = true;
+      offset += length;
+    }
+    segment.indexed.set(offset);
+    return found;
+  }
+
+  private static void read(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  /**
+   * @return Stream positioned after the record header, or null if the checksum doesn't match
+   */
+  private static DataInputStream verify(ByteBuffer record) {
+    byte[] bytes = record.array();
+    CRC32 crc = new CRC32();
+    crc.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE - 4);
+    int expected = ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt();
+    if ((int) crc.getValue() != expected) {
+      return null;
+    }
+    return new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE - 4));
+  }
+
+  /**
+   * @return The entry in the checksummed binary encoding used by the segments
+   */
+  static byte[] encode(String key, HttpCacheEntry entry) throws IOException {
+    return encode(key, PUT, System.currentTimeMillis(), entry);
+  }
+
+  /**
+   * @return The entry decoded from {@link #encode(String, HttpCacheEntry)}, or null if it's for another key
+   */
+  static HttpCacheEntry decode(byte[] record, String key) throws IOException {
+    return decodeEntry(ByteBuffer.wrap(record), key);
+  }
+
+  private static byte[] encode(String key, byte type, long time, HttpCacheEntry entry) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(0);
+    out.writeByte(type);
+    out.writeLong(time);
+    writeString(out, key);
+    if (type == PUT) {
+      out.writeLong(entry.getRequestDate().getTime());
+      out.writeLong(entry.getResponseDate().getTime());
+      StatusLine status = entry.getStatusLine();
+      writeString(out, status.getProtocolVersion().getProtocol());
+      out.writeInt(status.getProtocolVersion().getMajor());
+      out.writeInt(status.getProtocolVersion().getMinor());
+      out.writeInt(status.getStatusCode());
+      writeString(out, status.getReasonPhrase());
+      Header[] headers = entry.getAllHeaders();
+      out.writeInt(headers.length);
+      for (Header header : headers) {
+        writeString(out, header.getName());
+        writeString(out, header.getValue());
+      }
+      writeString(out, entry.getRequestMethod());
+      Map<String, String> variants = entry.getVariantMap();
+      out.writeInt(variants.size());
+      for (Map.Entry<String, String> variant : variants.entrySet()) {
+        writeString(out, variant.getKey());
+        writeString(out, variant.getValue());
+      }
+      Resource resource = entry.getResource();
+      if (resource == null) {
+        out.writeLong(-1);
+      } else {
+        out.writeLong(resource.length());
+        try (InputStream in = resource.getInputStream()) {
+          byte[] buffer = new byte[8192];
+          for (int len; (len = in.read(buffer)) != -1; out.write(buffer, 0, len));
         }
       }
-      closeStreams();
-      synchronized (locks) {
-        locks.remove(lockName);
-        locks.notifyAll();
+    }
+    out.flush();
+    byte[] record = new byte[bytes.size() + 4];
+    System.arraycopy(bytes.toByteArray(), 0, record, 0, bytes.size());
+    ByteBuffer buffer = ByteBuffer.wrap(record);
+    buffer.putInt(4, record.length);
+    CRC32 crc = new CRC32();
+    crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE - 4);
+    buffer.putInt(record.length - 4, (int) crc.getValue());
+    return record;
+  }
+
+  private static HttpCacheEntry decodeEntry(ByteBuffer record, String expectedKey) throws IOException {
+    DataInputStream in = verify(record);
+    if (in == null) {
+      throw new IOException("Corrupt cache record");
+    }
+    byte type = in.readByte();
+    in.readLong();
+    String key = readString(in);
+    if (type != PUT || !key.equals(expectedKey)) {
+      return null;
+    }
+    Date requestDate = new Date(in.readLong());
+    Date responseDate = new Date(in.readLong());
+    StatusLine status = new BasicStatusLine(
+        new ProtocolVersion(readString(in), in.readInt(), in.readInt()), in.readInt(), readString(in));
+    Header[] headers = new Header[in.readInt()];
+    for (int i = 0; i < headers.length; i++) {
+      headers[i] = new BasicHeader(readString(in), readString(in));
+    }
+    String requestMethod = readString(in);
+    int variantCount = in.readInt();
+    Map<String, String> variants = new HashMap<String, String>();
+    for (int i = 0; i < variantCount; i++) {
+      variants.put(readString(in), readString(in));
+    }
+    long resourceLength = in.readLong();
+    Resource resource = null;
+    if (resourceLength >= 0) {
+      byte[] content = new byte[(int) resourceLength];
+      in.readFully(content);
+      resource = new HeapResource(content);
+    }
+    return new HttpCacheEntry(requestDate, responseDate, status, headers, resource, variants, requestMethod);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void trace(String message) {
+    if (logger == null) {
+      LogsServer.instance().trace(message);
+    } else {
+      logger.log(Level.FINE, message);
+    }
+  }
+
+  private void exception(Throwable t) {
+    if (logger == null) {
+      LogsServer.instance().exception(t);
+    } else {
+      logger.log(Level.WARNING, "Cache error.", t);
+    }
+  }
+
+  void close() {
+    synchronized (instances) {
+      if (--refs > 0) {
+        return;
       }
+      instances.values().remove(this);
+    }
+    closed.set(true);
+    Util.close(stripeLocks);
+    compactor.interrupt();
+    for (Segment segment : segments.values()) {
+      Util.close(segment.channel);
     }
   }
 }
@@ -68,8 +68,8 @@ class HttpListener implements LoadListenerClient {
     errors = Collections.unmodifiableMap(errorsTmp);
   }
 
-  private final Map<String, Long> resources = new HashMap<String, Long>();
   private final ContextItem contextItem;
+  private final Session session;
   private final StatusCode statusCode;
   private final AtomicLong timeoutMS;
   private final StatusMonitor statusMonitor;
@@ -81,12 +81,13 @@ class HttpListener implements LoadListenerClient {
 
   HttpListener(ContextItem contextItem, StatusCode statusCode, AtomicLong timeoutMS) {
     this.contextItem = contextItem;
+    this.session = contextItem.context.get().session;
     this.statusCode = statusCode;
     this.timeoutMS = timeoutMS;
-    this.statusMonitor = StatusMonitor.instance();
+    this.statusMonitor = contextItem.statusMonitor;
     this.logs = LogsServer.instance();
-    this.ajaxListener = new AjaxListener(
-        this.started, this.newStatusCode, this.statusCode, this.resources, this.timeoutMS);
+    this.ajaxListener = new AjaxListener(contextItem, this.session,
+        this.started, this.newStatusCode, this.statusCode, this.timeoutMS);
   }
 
   void init() {
@@ -126,22 +127,23 @@ class HttpListener implements LoadListenerClient {
   @Override
   public void dispatchResourceLoadEvent(long frame, int state, String url,
       String contentType, double progress, int errorCode) {
-    final Settings settings = SettingsManager.settings();
+    final Settings settings = session.settings();
     if (settings == null) {
       throw new RuntimeException("Request made after browser closed. Ignoring...");
     }
-    synchronized (statusCode) {
-      if (url.startsWith("http://") || url.startsWith("https://")) {
-        if (state == LoadListenerClient.RESOURCE_STARTED) {
-          resources.put(frame + url, System.currentTimeMillis());
-        } else if (state == LoadListenerClient.RESOURCE_FINISHED
-            || state == LoadListenerClient.RESOURCE_FAILED) {
-          String original = null;
-          original = statusMonitor.originalFromRedirect(url);
-          resources.remove(frame + url);
-          if (original != null) {
-            resources.remove(frame + original);
-          }
+    if (url.startsWith("http://") || url.startsWith("https://")) {
+      if (state == LoadListenerClient.RESOURCE_STARTED) {
+        statusMonitor.expect(url);
+        ajaxListener.resourceStarted(new AjaxListener.Resource(frame, url));
+      } else if (state == LoadListenerClient.RESOURCE_FINISHED
+          || state == LoadListenerClient.RESOURCE_FAILED) {
+        String original = null;
+        original = statusMonitor.originalFromRedirect(url);
+        statusMonitor.loaded(url);
+        ajaxListener.resourceFinished(new AjaxListener.Resource(frame, url));
+        if (original != null) {
+          statusMonitor.loaded(original);
+          ajaxListener.resourceFinished(new AjaxListener.Resource(frame, original));
         }
       }
     }
@@ -152,12 +154,16 @@ class HttpListener implements LoadListenerClient {
   }
 
   void resetStatusCode() {
+    resetStatusCode(Readiness.ajaxIdle());
+  }
+
+  void resetStatusCode(Readiness readiness) {
     synchronized (statusCode) {
       newStatusCode.set(0);
       statusCode.set(0);
-      resources.clear();
+      ajaxListener.reset(readiness);
       started.set(false);
-      StatusMonitor.instance().clear();
+      statusMonitor.clear();
       statusCode.notifyAll();
     }
   }
@@ -168,7 +174,7 @@ class HttpListener implements LoadListenerClient {
   @Override
   public void dispatchLoadEvent(final long frame, final int state, String url,
       String contentType, double progress, int errorCode) {
-    final Settings settings = SettingsManager.settings();
+    final Settings settings = session.settings();
     if (settings == null) {
       throw new RuntimeException("Request made after browser closed. Ignoring...");
     }
@@ -177,25 +183,41 @@ class HttpListener implements LoadListenerClient {
       if (state == LoadListenerClient.PAGE_STARTED && settings.logJavascript()) {
         JavascriptLog.attach(Accessor.getPageFor(contextItem.engine.get()), frame);
       }
+      if (state == LoadListenerClient.PAGE_STARTED && mainFrame == frame) {
+        contextItem.elements().clear();
+      }
+      if (state == LoadListenerClient.PAGE_STARTED) {
+        statusMonitor.expect(url);
+      }
+      if (state == LoadListenerClient.PAGE_STARTED
+          || state == LoadListenerClient.PAGE_REDIRECTED) {
+        statusMonitor.addDocument(mainFrame == frame, url);
+      }
       if (state == LoadListenerClient.PAGE_STARTED
           || state == LoadListenerClient.PAGE_REDIRECTED
           || state == LoadListenerClient.DOCUMENT_AVAILABLE) {
         started.set(true);
-        resources.put(frame + url, System.currentTimeMillis());
+        ajaxListener.resourceStarted(new AjaxListener.Resource(frame, url));
         statusMonitor.monitor(url);
         statusMonitor.addPrimaryDocument(mainFrame == frame, url);
+        if (state == LoadListenerClient.DOCUMENT_AVAILABLE && mainFrame == frame) {
+          ajaxListener.documentAvailable(statusMonitor.status(url));
+        }
       } else if (state == LoadListenerClient.PAGE_FINISHED
           || state == LoadListenerClient.LOAD_STOPPED
           || state == LoadListenerClient.LOAD_FAILED) {
         if (mainFrame == frame) {
           newStatusCode.set(statusMonitor.status(url));
+          ajaxListener.mainFrameFinished();
         } else {
           newStatusCode.compareAndSet(0, statusMonitor.status(url));
         }
-        resources.remove(frame + url);
+        statusMonitor.loaded(url);
+        ajaxListener.resourceFinished(new AjaxListener.Resource(frame, url));
         String original = statusMonitor.originalFromRedirect(url);
         if (original != null) {
-          resources.remove(frame + original);
+          statusMonitor.loaded(original);
+          ajaxListener.resourceFinished(new AjaxListener.Resource(frame, original));
         }
       }
     }
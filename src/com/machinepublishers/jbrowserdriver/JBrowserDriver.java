@@ -23,7 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
-import java.rmi.RemoteException;
+import java.nio.file.StandardCopyOption;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.util.ArrayList;
@@ -34,13 +34,15 @@ import java.util.EnumMap;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.Attributes;
@@ -52,6 +54,7 @@ import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.openqa.selenium.By;
@@ -99,21 +102,27 @@ public class JBrowserDriver extends RemoteWebDriver {
    */
   @Deprecated
   public static final String KEYBOARD_DELETE = Util.KEYBOARD_DELETE;
-  private static final AtomicInteger runningInstances = new AtomicInteger(0);
   private static final Set<SocketLock> locks = new HashSet<SocketLock>();
-  private static final Set<Job> waiting = new LinkedHashSet<Job>();
-  private static final Set<PortGroup> portGroupsActive = new LinkedHashSet<PortGroup>();
   private static final String JAVA_BIN;
   private static final List<String> inheritedArgs;
   private static volatile List<String> classpathSimpleArgs;
   private static volatile List<String> classpathUnpackedArgs;
   private static final AtomicReference<List<String>> classpathArgs = new AtomicReference<>();
   private static final AtomicBoolean firstLaunch = new AtomicBoolean(true);
+  private static final String CLASSPATH_SIMPLE = "classpath-simple.jar";
+  private static final String CLASSPATH_UNPACKED = "classpath-unpacked.jar";
+  private static final String CLASSPATH_MARKER = "unpack-ms.txt";
+  private static final Set<String> classDataArchiving = Collections.synchronizedSet(new HashSet<String>());
   private static final Set<String> filteredLogs = Collections.unmodifiableSet(
       new HashSet<String>(Arrays.asList(new String[] {
           "Warning: Single GUI Threading is enabled, FPS should be slower"
       })));
   private static final AtomicLong sessionIdCounter = new AtomicLong();
+  static final ExecutorService launcher = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "JBrowserDriver launcher");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   static {
     List<String> inheritedArgsTmp = new ArrayList<String>();
@@ -136,39 +145,49 @@ public class JBrowserDriver extends RemoteWebDriver {
 
   }
 
-  private static void initClasspath() {
+  private static void initClasspath(Settings settings) {
     List<String> classpathSimpleTmp = new ArrayList<String>();
     List<String> classpathUnpackedTmp = new ArrayList<String>();
     try {
+      final long start = System.currentTimeMillis();
       List<File> classpathElements = new ClassGraph().getClasspathFiles();
-      final File classpathDir = Files.createTempDirectory("jbd_classpath_").toFile();
-      Runtime.getRuntime().addShutdownHook(new FileRemover(classpathDir));
-      List<String> pathsSimple = new ArrayList<String>();
-      List<String> pathsUnpacked = new ArrayList<String>();
-      for (File curElement : classpathElements) {
-        String rootLevelElement = curElement.getAbsoluteFile().toURI().toURL().toExternalForm();
-        pathsSimple.add(rootLevelElement);
-        pathsUnpacked.add(rootLevelElement);
-        if (curElement.isFile() && curElement.getPath().endsWith(".jar")) {
-          try (ZipFile jar = new ZipFile(curElement)) {
-            Enumeration<? extends ZipEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-              ZipEntry entry = entries.nextElement();
-              if (entry.getName().endsWith(".jar")) {
-                try (InputStream in = jar.getInputStream(entry)) {
-                  File childJar = new File(classpathDir,
-                      Util.randomFileName() + ".jar");
-                  Files.copy(in, childJar.toPath());
-                  pathsUnpacked.add(childJar.getAbsoluteFile().toURI().toURL().toExternalForm());
-                  childJar.deleteOnExit();
-                }
-              }
+      File classpathDir;
+      File cacheDir = settings.classpathCacheDir();
+      if (cacheDir == null) {
+        classpathDir = Files.createTempDirectory("jbd_classpath_").toFile();
+        Runtime.getRuntime().addShutdownHook(new FileRemover(classpathDir));
+        unpackClasspath(classpathElements, classpathDir, true);
+      } else {
+        classpathDir = new File(cacheDir, classpathHash(classpathElements));
+        File marker = new File(classpathDir, CLASSPATH_MARKER);
+        if (marker.isFile()
+            && new File(classpathDir, CLASSPATH_SIMPLE).isFile()
+            && new File(classpathDir, CLASSPATH_UNPACKED).isFile()) {
+          String unpackMS = new String(Files.readAllBytes(marker.toPath()), "utf-8").trim();
+          log(settings.logger(), Level.INFO, "Reused classpath from " + classpathDir.getAbsolutePath() + " in "
+              + (System.currentTimeMillis() - start) + "ms, saving " + unpackMS + "ms of unpacking.");
+        } else {
+          cacheDir.mkdirs();
+          //Unpack to a private dir and then rename it, so other JVMs sharing the cache never see a partial classpath
+          File tmpDir = Files.createTempDirectory(cacheDir.toPath(), "tmp_").toFile();
+          unpackClasspath(classpathElements, tmpDir, false);
+          long unpackMS = System.currentTimeMillis() - start;
+          Files.write(new File(tmpDir, CLASSPATH_MARKER).toPath(), Long.toString(unpackMS).getBytes("utf-8"));
+          if (!tmpDir.renameTo(classpathDir)) {
+            if (marker.isFile()) {
+              //another JVM finished unpacking the same classpath first
+              FileUtils.deleteQuietly(tmpDir);
+            } else {
+              classpathDir = tmpDir;
+              Runtime.getRuntime().addShutdownHook(new FileRemover(classpathDir));
             }
           }
+          log(settings.logger(), Level.INFO, "Unpacked classpath to "
+              + classpathDir.getAbsolutePath() + " in " + unpackMS + "ms.");
         }
       }
-      classpathSimpleTmp = createClasspathJar(classpathDir, "classpath-simple.jar", pathsSimple);
-      classpathUnpackedTmp = createClasspathJar(classpathDir, "classpath-unpacked.jar", pathsUnpacked);
+      classpathSimpleTmp = classpathArgs(new File(classpathDir, CLASSPATH_SIMPLE));
+      classpathUnpackedTmp = classpathArgs(new File(classpathDir, CLASSPATH_UNPACKED));
     } catch (Throwable t) {
       Util.handleException(t);
     }
@@ -176,66 +195,76 @@ public class JBrowserDriver extends RemoteWebDriver {
     classpathUnpackedArgs = Collections.unmodifiableList(classpathUnpackedTmp);
   }
 
-  private static List<String> createClasspathJar(File dir, String jarName, List<String> manifestClasspath)
+  private static String classpathHash(List<File> classpathElements) {
+    StringBuilder builder = new StringBuilder();
+    for (File curElement : classpathElements) {
+      builder.append(curElement.getAbsolutePath())
+          .append('|').append(curElement.length())
+          .append('|').append(curElement.lastModified())
+          .append('\n');
+    }
+    return DigestUtils.sha1Hex(builder.toString());
+  }
+
+  private static void unpackClasspath(List<File> classpathElements, File classpathDir, boolean temporary)
+      throws IOException {
+    List<String> pathsSimple = new ArrayList<String>();
+    List<String> pathsUnpacked = new ArrayList<String>();
+    int childJars = 0;
+    for (File curElement : classpathElements) {
+      String rootLevelElement = curElement.getAbsoluteFile().toURI().toURL().toExternalForm();
+      pathsSimple.add(rootLevelElement);
+      pathsUnpacked.add(rootLevelElement);
+      if (curElement.isFile() && curElement.getPath().endsWith(".jar")) {
+        try (ZipFile jar = new ZipFile(curElement)) {
+          Enumeration<? extends ZipEntry> entries = jar.entries();
+          while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(".jar")) {
+              try (InputStream in = jar.getInputStream(entry)) {
+                //Relative to the classpath jar, so the directory can be moved after it's unpacked
+                String childJarName = (++childJars) + ".jar";
+                File childJar = new File(classpathDir, childJarName);
+                Files.copy(in, childJar.toPath());
+                pathsUnpacked.add(childJarName);
+                if (temporary) {
+                  childJar.deleteOnExit();
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+    createClasspathJar(new File(classpathDir, CLASSPATH_SIMPLE), pathsSimple, temporary);
+    createClasspathJar(new File(classpathDir, CLASSPATH_UNPACKED), pathsUnpacked, temporary);
+  }
+
+  private static void createClasspathJar(File classpathJar, List<String> manifestClasspath, boolean temporary)
       throws IOException {
-    List<String> classpathArgs = new ArrayList<String>();
     Manifest manifest = new Manifest();
     manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
     manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH,
         StringUtils.join(manifestClasspath, ' '));
-    File classpathJar = new File(dir, jarName);
-    classpathJar.deleteOnExit();
+    if (temporary) {
+      classpathJar.deleteOnExit();
+    }
     try (JarOutputStream stream = new JarOutputStream(
         new FileOutputStream(classpathJar), manifest)) {}
+  }
+
+  private static List<String> classpathArgs(File classpathJar) throws IOException {
+    List<String> classpathArgs = new ArrayList<String>();
     classpathArgs.add("-classpath");
     classpathArgs.add(classpathJar.getCanonicalPath());
     return classpathArgs;
   }
 
-  public static void initWorkThread() {
-    int previousInstanceCount = runningInstances.getAndIncrement();
-    if (previousInstanceCount > 0) {
-      return;
-    }
-    Thread work = new Thread(() -> {
-      synchronized (waiting) {
-        while (runningInstances.get() > 0) {
-          List<Job> selectedJobs = new ArrayList<Job>();
-          for (Job job : waiting) {
-            for (PortGroup curPortGroup : job.settings.portGroups()) {
-              boolean conflicts = false;
-              for (PortGroup curUsed : portGroupsActive) {
-                if (curUsed.conflicts(curPortGroup)) {
-                  conflicts = true;
-                  break;
-                }
-              }
-              if (!conflicts) {
-                job.portGroup.set(curPortGroup);
-                break;
-              }
-            }
-            if (job.portGroup.get() != null) {
-              selectedJobs.add(job);
-              portGroupsActive.add(job.portGroup.get());
-            }
-          }
-          for (Job job : selectedJobs) {
-            waiting.remove(job);
-            synchronized (job) {
-              job.notifyAll();
-            }
-          }
-          try {
-            waiting.wait();
-          } catch (InterruptedException e) {}
-        }
-      }
-    });
-    work.setDaemon(true);
-    work.setName("JBrowserDriver queued instance handler");
-    work.start();
-  }
+  /**
+   * @deprecated Port groups are now assigned without a background thread, so this does nothing.
+   */
+  @Deprecated
+  public static void initWorkThread() {}
 
   /**
    * Run diagnostic tests.
@@ -246,18 +275,54 @@ public class JBrowserDriver extends RemoteWebDriver {
     return Test.run();
   }
 
+  /**
+   * @return Statistics for child browser processes launched ahead of time or recycled.
+   * 
+   * @see Settings.Builder#warmProcesses(int)
+   * @see Settings.Builder#maxProcessReuse(int)
+   */
+  public static ProcessPoolStats processPoolStats() {
+    return ProcessPool.stats();
+  }
+
+  /**
+   * Ends the idle processes launched ahead of time or recycled. Processes in use aren't affected,
+   * and the pool is refilled as drivers are constructed again. This also happens when the JVM shuts down.
+   * 
+   * @see Settings.Builder#warmProcesses(int)
+   * @see Settings.Builder#maxProcessReuse(int)
+   */
+  public static void clearProcessPool() {
+    ProcessPool.clear();
+  }
+
+  /**
+   * @return Statistics for drivers waiting until fewer than the max number of processes are running.
+   * 
+   * @see Settings.Builder#processes(int)
+   */
+  public static ProcessQueueStats processQueueStats() {
+    return PortGroupScheduler.stats();
+  }
+
+  /**
+   * @param framed
+   *          Whether to report calls made over the framed transport rather than over RMI
+   * @return Statistics for calls made to child browser processes over the given transport.
+   * 
+   * @see Settings.Builder#framedTransport(boolean)
+   */
+  public static TransportStats transportStats(boolean framed) {
+    return (framed ? TransportStats.FRAMED : TransportStats.RMI).stats();
+  }
+
   private final JBrowserDriverRemote remote;
   private final Logs logs;
-  private final AtomicReference<Process> process = new AtomicReference<Process>();
-  private final AtomicBoolean processEnded = new AtomicBoolean();
-  private final AtomicReference<PortGroup> configuredPortGroup = new AtomicReference<PortGroup>();
-  private final AtomicReference<PortGroup> actualPortGroup = new AtomicReference<PortGroup>();
+  private final ChildProcess child;
+  private final Settings settings;
   private final AtomicReference<OptionsLocal> options = new AtomicReference<OptionsLocal>();
   private final SessionId sessionId;
-  private final SocketLock lock = new SocketLock();
-  private final File tmpDir;
-  private final FileRemover shutdownHook;
-  private final Thread heartbeatThread;
+  private final SocketLock lock;
 
   /**
    * Constructs a browser with default settings, UTC timezone, and no proxy.
@@ -292,84 +357,60 @@ public class JBrowserDriver extends RemoteWebDriver {
    * @param settings
    */
   public JBrowserDriver(final Settings settings) {
-    initWorkThread();
-    synchronized (locks) {
-      locks.add(lock);
-    }
-    File tmpDir = null;
-    try {
-      tmpDir = Files.createTempDirectory("jbd_tmp_").toFile();
-    } catch (Throwable t) {
-      Util.handleException(t);
-    }
-    this.tmpDir = tmpDir;
-    this.shutdownHook = new FileRemover(tmpDir);
-    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    this(settings, take(settings));
+  }
 
-    final Job job = new Job(settings, configuredPortGroup);
-    synchronized (waiting) {
-      waiting.add(job);
-      waiting.notifyAll();
-    }
-    synchronized (job) {
-      while (configuredPortGroup.get() == null) {
-        try {
-          job.wait();
-        } catch (InterruptedException e) {}
-      }
-    }
-    SessionId sessionIdTmp = null;
-    if (!settings.customClasspath()) {
-      synchronized (firstLaunch) {
-        if (firstLaunch.compareAndSet(true, false)) {
-          initClasspath();
-          classpathArgs.set(classpathUnpackedArgs);
-          sessionIdTmp = new SessionId(launchProcess(settings, configuredPortGroup.get()));
-          if (actualPortGroup.get() == null) {
-            classpathArgs.set(classpathSimpleArgs);
-          }
-        }
-      }
-    }
-    if (actualPortGroup.get() == null) {
-      sessionIdTmp = new SessionId(launchProcess(settings, configuredPortGroup.get()));
-    }
-    sessionId = sessionIdTmp;
-    if (actualPortGroup.get() == null) {
-      endProcess();
-      Util.handleException(new IllegalStateException("Could not launch browser."));
-    }
-    HeartbeatRemote heartbeatTmp = null;
-    JBrowserDriverRemote instanceTmp = null;
+  /**
+   * Constructs a browser without blocking the calling thread while waiting for a process to
+   * become available, launching the process, or connecting to it.
+   * <p>
+   * Use {@link Settings#builder()} ...build() to create settings to pass to this method.
+   * 
+   * @param settings
+   * @return A future completed with the browser once it's ready to use, or completed exceptionally
+   *         if it couldn't be launched.
+   */
+  public static CompletableFuture<JBrowserDriver> createAsync(final Settings settings) {
+    ChildProcess pooled = takeRunning(settings);
+    CompletableFuture<ChildProcess> child = pooled == null
+        ? launchAsync(settings) : CompletableFuture.completedFuture(pooled);
+    return child.thenApplyAsync(cur -> new JBrowserDriver(settings, cur), launcher);
+  }
+
+  private JBrowserDriver(final Settings settings, final ChildProcess child) {
+    this.child = child;
+    child.uses.incrementAndGet();
+    child.logger.set(settings.logger());
+    child.daemon(false);
+    this.settings = settings;
+    final boolean shared = settings.sessionsPerProcess() > 1;
+    final boolean joined = shared && child.sessions.get() > 0;
+    lock = shared ? new SocketLock(child.lock.get()) : child.lock.get();
+    JBrowserDriverRemote remoteTmp = child.remote.get();
+    String sessionName = null;
     try {
       synchronized (lock.validated()) {
-        Registry registry = LocateRegistry
-            .getRegistry(settings.host(), (int) actualPortGroup.get().child,
-                new SocketFactory(settings.host(), actualPortGroup.get(), locks));
-        heartbeatTmp = (HeartbeatRemote) registry.lookup("HeartbeatRemote");
-        instanceTmp = (JBrowserDriverRemote) registry.lookup("JBrowserDriverRemote");
-        instanceTmp.setUp(settings);
+        if (joined) {
+          sessionName = remoteTmp.newSession();
+          remoteTmp = (JBrowserDriverRemote) child.registry.get().lookup(sessionName);
+        }
+        remoteTmp.setUp(settings);
       }
     } catch (Throwable t) {
+      if (joined) {
+        endSession();
+      } else {
+        endProcess(child);
+      }
       Util.handleException(t);
     }
-    final HeartbeatRemote heartbeat = heartbeatTmp;
-    heartbeatThread = new Thread(() -> {
-      while (true) {
-        if (processEnded.get()) {
-          return;
-        }
-        try {
-          heartbeat.heartbeat();
-        } catch (RemoteException e) {}
-        try {
-          Thread.sleep(5000);
-        } catch (InterruptedException e) {}
-      }
-    });
-    heartbeatThread.setName("Heartbeat");
-    heartbeatThread.start();
-    remote = instanceTmp;
+    remote = remoteTmp;
+    sessionId = new SessionId(sessionName == null
+        ? child.logPrefix.get() : child.logPrefix.get() + sessionName.substring(sessionName.indexOf('/')));
+    if (shared && !joined && child.classDataArchive.get() == null) {
+      ProcessPool.addShared(child, settings);
+    }
+    ProcessPool.refill(settings);
     LogsRemote logsRemote = null;
     try {
       synchronized (lock.validated()) {
@@ -386,16 +427,168 @@ public class JBrowserDriver extends RemoteWebDriver {
     try {
       super.finalize();
     } catch (Throwable t) {}
+    if (child.lock.get() == lock) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(child.shutdownHook);
+        child.shutdownHook.run();
+      } catch (Throwable t) {}
+    }
+  }
+
+  private static ChildProcess take(Settings settings) {
+    ChildProcess child = takeRunning(settings);
+    if (child == null) {
+      try {
+        child = launchAsync(settings).join();
+      } catch (CompletionException e) {
+        Util.handleException(e.getCause());
+      }
+    }
+    return child;
+  }
+
+  /**
+   * @return A process with room for another session, or else an idle pooled process, or null if there's neither.
+   */
+  private static ChildProcess takeRunning(Settings settings) {
+    ChildProcess child = ProcessPool.takeShared(settings);
+    return child == null ? ProcessPool.take(settings) : child;
+  }
+
+  /**
+   * Launches a child browser process for a driver and connects to it, but doesn't yet apply the settings to it.
+   * No thread is blocked while waiting for a port group, and only the process's own output thread
+   * is used while waiting for it to start--except for the first launch in this JVM, which blocks a
+   * launcher thread until the process starts, to find out which classpath processes need.
+   * If no port group is free, an idle pooled process holding one is ended to free it.
+   * 
+   * @param settings
+   */
+  static CompletableFuture<ChildProcess> launchAsync(final Settings settings) {
+    CompletableFuture<PortGroup> portGroup = PortGroupScheduler.acquireAsync(settings);
+    if (!portGroup.isDone()) {
+      launcher.execute(() -> ProcessPool.evict(settings.portGroups()));
+    }
+    return launchAsync(settings, portGroup, false);
+  }
+
+  /**
+   * Same as {@link #launchAsync(Settings)} but launches a process ahead of time, on a port group already taken
+   * for it. Its threads must not prevent the JVM from exiting.
+   * 
+   * @param settings
+   * @param portGroup
+   */
+  static CompletableFuture<ChildProcess> launchAsync(final Settings settings, final PortGroup portGroup) {
+    return launchAsync(settings, CompletableFuture.completedFuture(portGroup), true);
+  }
+
+  private static CompletableFuture<ChildProcess> launchAsync(final Settings settings,
+      final CompletableFuture<PortGroup> acquired, final boolean pooled) {
+    return acquired.thenComposeAsync(portGroup -> {
+      ChildProcess childTmp = null;
+      try {
+        childTmp = new ChildProcess(settings);
+      } catch (RuntimeException e) {
+        PortGroupScheduler.release(portGroup);
+        throw e;
+      }
+      final ChildProcess child = childTmp;
+      child.configuredPortGroup.set(portGroup);
+      synchronized (locks) {
+        locks.add(child.lock.get());
+      }
+      final long launchStart = System.currentTimeMillis();
+      CompletableFuture<Void> launched = null;
+      try {
+        if (!settings.customClasspath()) {
+          synchronized (firstLaunch) {
+            if (firstLaunch.compareAndSet(true, false)) {
+              try {
+                initClasspath(settings);
+                classpathArgs.set(classpathUnpackedArgs);
+                launchProcess(settings, child, pooled).join();
+              } catch (RuntimeException e) {
+                //the next launch tries again
+                firstLaunch.set(true);
+                throw e;
+              }
+              if (child.actualPortGroup.get() == null) {
+                classpathArgs.set(classpathSimpleArgs);
+              } else {
+                launched = CompletableFuture.completedFuture(null);
+              }
+            }
+          }
+        }
+        if (launched == null) {
+          launched = launchProcess(settings, child, pooled);
+        }
+      } catch (RuntimeException e) {
+        //releases the port group and lock
+        endProcess(child);
+        throw e;
+      }
+      return launched.thenApplyAsync(ignored -> connect(settings, child, pooled, launchStart), launcher);
+    }, launcher);
+  }
+
+  private static ChildProcess connect(final Settings settings, final ChildProcess child,
+      final boolean pooled, final long launchStart) {
+    if (child.actualPortGroup.get() == null) {
+      endProcess(child);
+      Util.handleException(new IllegalStateException("Could not launch browser."));
+    }
     try {
-      Runtime.getRuntime().removeShutdownHook(shutdownHook);
-      shutdownHook.run();
-    } catch (Throwable t) {}
+      synchronized (child.lock.get().validated()) {
+        Registry registry;
+        if (settings.framedTransport()) {
+          child.framedClient.set(new FramedClient(settings.host(), child.framedPort.get()));
+          registry = child.framedClient.get();
+        } else {
+          registry = TimedRemote.wrap(LocateRegistry
+              .getRegistry(settings.host(), (int) child.actualPortGroup.get().child,
+                  new SocketFactory(settings.host(), child.actualPortGroup.get(), locks)));
+        }
+        child.registry.set(registry);
+        child.connected(
+            (HeartbeatRemote) registry.lookup("HeartbeatRemote"),
+            (JBrowserDriverRemote) registry.lookup("JBrowserDriverRemote"),
+            pooled);
+      }
+    } catch (Throwable t) {
+      endProcess(child);
+      Util.handleException(t);
+    }
+    child.launchMS.set(System.currentTimeMillis() - launchStart);
+    ProcessPool.recordLaunch(child.launchMS.get());
+    log(child.logger.get(), Level.FINE, child.logPrefix.get() + " Ready in " + child.launchMS.get() + "ms"
+        + (settings.classDataSharing() == null ? "." : child.classDataArchive.get() == null
+            ? " using class data sharing archive." : " while creating class data sharing archive."));
+    return child;
+  }
+
+  private static File classDataArchiveTmp(File archive) {
+    return new File(archive.getAbsolutePath() + ".tmp");
+  }
+
+  private static void publishClassDataArchive(File archive) {
+    File tmp = classDataArchiveTmp(archive);
+    if (tmp.isFile()) {
+      try {
+        Files.move(tmp.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (Throwable t) {
+        FileUtils.deleteQuietly(tmp);
+      }
+    }
+    classDataArchiving.remove(archive.getAbsolutePath());
   }
 
-  private String launchProcess(final Settings settings, final PortGroup portGroup) {
-    final AtomicBoolean ready = new AtomicBoolean();
-    final AtomicReference<String> logPrefix = new AtomicReference<String>("");
-    new Thread(() -> {
+  private static CompletableFuture<Void> launchProcess(final Settings settings, final ChildProcess child,
+      final boolean pooled) {
+    final CompletableFuture<Void> ready = new CompletableFuture<Void>();
+    final AtomicReference<String> logPrefix = child.logPrefix;
+    Thread thread = new Thread(() -> {
       List<String> myArgs = new ArrayList<String>();
       myArgs.add(settings.javaBinary() == null ? JAVA_BIN : settings.javaBinary());
       myArgs.addAll(inheritedArgs);
@@ -416,19 +609,46 @@ public class JBrowserDriver extends RemoteWebDriver {
         myArgs.add("-XaddExports:javafx.web/com.sun.javafx.webkit=ALL-UNNAMED");
         myArgs.add("-XaddExports:javafx.web/com.sun.webkit=ALL-UNNAMED");
       }
-      myArgs.add("-Djava.io.tmpdir=" + tmpDir.getAbsolutePath());
+      myArgs.add("-Djava.io.tmpdir=" + child.tmpDir.getAbsolutePath());
       myArgs.add("-Djava.rmi.server.hostname=" + settings.host());
+      final Map<String, String> environment = new HashMap<String, String>();
+      if (settings.cache() && settings.cacheDaemon()) {
+        try {
+          CacheDaemon cacheDaemon = CacheDaemon.instance(settings);
+          myArgs.add("-D" + CacheDaemon.PORT_PROPERTY + "=" + cacheDaemon.port());
+          //kept out of the command line, which other users on the host can see
+          environment.put(CacheDaemon.TOKEN_ENV, cacheDaemon.token());
+        } catch (Throwable t) {
+          log(settings.logger(), Level.WARNING, "Could not start shared cache; the browser will use its own.");
+        }
+      }
+      File classDataSharing = settings.classDataSharing();
+      if (classDataSharing != null) {
+        if (classDataSharing.isFile()) {
+          myArgs.add("-XX:SharedArchiveFile=" + classDataSharing.getAbsolutePath());
+        } else if (child.classDataArchive.get() != null
+            || (!pooled && classDataArchiving.add(classDataSharing.getAbsolutePath()))) {
+          //only one process per archive does the training run, and it's never pooled, recycled, or shared
+          //so that it exits and publishes the archive as soon as its driver quits
+          child.classDataArchive.set(classDataSharing);
+          myArgs.add("-XX:ArchiveClassesAtExit=" + classDataArchiveTmp(classDataSharing).getAbsolutePath());
+        }
+      }
       myArgs.addAll(settings.javaOptions());
       myArgs.add(JBrowserDriverServer.class.getName());
+      PortGroup portGroup = child.configuredPortGroup.get();
       myArgs.add(Long.toString(portGroup.child));
       myArgs.add(Long.toString(portGroup.parent));
       myArgs.add(Long.toString(portGroup.parentAlt));
+      if (settings.framedTransport()) {
+        myArgs.add("framed");
+      }
       try {
         new ProcessExecutor()
             .addListener(new ProcessListener() {
               @Override
               public void afterStart(Process proc, ProcessExecutor executor) {
-                process.set(proc);
+                child.process.set(proc);
               }
             })
             .redirectOutput(new LogOutputStream() {
@@ -438,27 +658,27 @@ public class JBrowserDriver extends RemoteWebDriver {
               protected void processLine(String line) {
                 if (line != null && !line.isEmpty()) {
                   if (!done) {
-                    synchronized (ready) {
-                      if (line.startsWith("ready on ports ")) {
-                        String[] parts = line.substring("ready on ports ".length()).split("/");
-                        actualPortGroup.set(new PortGroup(
-                            Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
-                        logPrefix.set(new StringBuilder()
-                            .append("[Instance ")
-                            .append(sessionIdCounter.incrementAndGet())
-                            .append("][Port ")
-                            .append(actualPortGroup.get().child)
-                            .append("]")
-                            .toString());
-                        ready.set(true);
-                        ready.notifyAll();
-                        done = true;
-                      } else {
-                        log(settings.logger(), logPrefix.get(), line);
+                    if (line.startsWith("ready on ports ")) {
+                      String[] parts = line.substring("ready on ports ".length()).split("/");
+                      child.actualPortGroup.set(new PortGroup(
+                          Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+                      if (parts.length > 3) {
+                        child.framedPort.set(Integer.parseInt(parts[3]));
                       }
+                      logPrefix.set(new StringBuilder()
+                          .append("[Instance ")
+                          .append(sessionIdCounter.incrementAndGet())
+                          .append("][Port ")
+                          .append(child.actualPortGroup.get().child)
+                          .append("]")
+                          .toString());
+                      ready.complete(null);
+                      done = true;
+                    } else {
+                      log(child.logger.get(), logPrefix.get(), line);
                     }
                   } else {
-                    log(settings.logger(), logPrefix.get(), line);
+                    log(child.logger.get(), logPrefix.get(), line);
                   }
                 }
               }
@@ -466,28 +686,31 @@ public class JBrowserDriver extends RemoteWebDriver {
             .redirectError(new LogOutputStream() {
               @Override
               protected void processLine(String line) {
-                log(settings.logger(), logPrefix.get(), line);
+                log(child.logger.get(), logPrefix.get(), line);
               }
             })
             .destroyOnExit()
+            .environment(environment)
             .command(myArgs).execute();
       } catch (Throwable t) {
         Util.handleException(t);
+      } finally {
+        ready.complete(null);
       }
-      synchronized (ready) {
-        ready.set(true);
-        ready.notifyAll();
-      }
-    }).start();
-    synchronized (ready) {
-      while (!ready.get()) {
-        try {
-          ready.wait();
-          break;
-        } catch (InterruptedException e) {}
-      }
+    });
+    //the heartbeat thread alone keeps the JVM from exiting while the process is in use
+    thread.setDaemon(true);
+    thread.start();
+    return ready;
+  }
+
+  private static void log(Logger logger, Level level, String message) {
+    if (logger != null) {
+      LogRecord record = new LogRecord(level, message);
+      record.setSourceMethodName(null);
+      record.setSourceClassName(JBrowserDriver.class.getName());
+      logger.log(record);
     }
-    return logPrefix.get();
   }
 
   private static void log(Logger logger, String prefix, String message) {
@@ -684,6 +907,25 @@ public class JBrowserDriver extends RemoteWebDriver {
     }
   }
 
+  /**
+   * Loads a page, returning once it's loaded according to the given policy rather than the default of
+   * waiting for AJAX requests to become idle. The policy only applies to this page load.
+   * 
+   * @param url
+   * @param readiness
+   *          Decides when the page is loaded, e.g., {@link Readiness#domContentLoaded()}
+   * @see #get(String)
+   */
+  public void get(final String url, final Readiness readiness) {
+    try {
+      synchronized (lock.validated()) {
+        remote.get(url, readiness);
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -700,6 +942,75 @@ public class JBrowserDriver extends RemoteWebDriver {
     return by.findElements(this);
   }
 
+  /**
+   * Reads properties of many elements at once. All values are read with a single call to the browser
+   * process, which is much faster than calling methods of each {@link WebElement} when extracting
+   * data such as the cells of a table.
+   * <p>
+   * Properties are named as follows:
+   * <ul>
+   * <li><code>text</code>: as with {@link WebElement#getText()}</li>
+   * <li><code>tagName</code>: as with {@link WebElement#getTagName()}</li>
+   * <li><code>rect</code>: as with {@link WebElement#getRect()}</li>
+   * <li><code>displayed</code>, <code>enabled</code>, <code>selected</code>: as with
+   * {@link WebElement#isDisplayed()}, {@link WebElement#isEnabled()}, and {@link WebElement#isSelected()}</li>
+   * <li><code>attribute:</code><i>name</i>: as with {@link WebElement#getAttribute(String)}</li>
+   * <li><code>css:</code><i>name</i>: as with {@link WebElement#getCssValue(String)}</li>
+   * </ul>
+   * 
+   * @param elements
+   *          Elements found by this browser.
+   * @param properties
+   * @return Values for each element, in the same order as the elements, with each map keyed by property name
+   *         in the order requested. A value is null when its element is stale, or when
+   *         the property requires the element to be visible but it isn't.
+   */
+  public List<Map<String, Object>> getProperties(List<WebElement> elements, String... properties) {
+    List<ElementHandle.Id> remotes = new ArrayList<ElementHandle.Id>(elements.size());
+    for (WebElement element : elements) {
+      ElementRemote elementRemote = element instanceof Element ? ((Element) element).remote() : null;
+      remotes.add(elementRemote instanceof ElementHandle ? ((ElementHandle) elementRemote).id() : null);
+    }
+    try {
+      synchronized (lock.validated()) {
+        return properties(remote.getProperties(remotes, Arrays.asList(properties)));
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
+  /**
+   * Finds elements and reads their properties, with a single call to the browser process.
+   * 
+   * @param by
+   * @param properties
+   * @return Values for each element found, in document order.
+   * @see #getProperties(List, String...)
+   */
+  public List<Map<String, Object>> getProperties(By by, String... properties) {
+    try {
+      synchronized (lock.validated()) {
+        return properties(remote.getProperties(by, Arrays.asList(properties)));
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
+  private static List<Map<String, Object>> properties(List<Map<String, Object>> values) {
+    for (Map<String, Object> elementValues : values) {
+      for (Map.Entry<String, Object> entry : elementValues.entrySet()) {
+        if (entry.getValue() instanceof Rectangle) {
+          entry.setValue(((Rectangle) entry.getValue()).toSelenium());
+        }
+      }
+    }
+    return values;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1133,11 +1444,10 @@ public class JBrowserDriver extends RemoteWebDriver {
     }
   }
 
-  private void endProcess() {
-    if (processEnded.compareAndSet(false, true)) {
-      runningInstances.decrementAndGet();
-      lock.expired.set(true);
-      final Process proc = process.get();
+  static void endProcess(ChildProcess child) {
+    if (child.ended.compareAndSet(false, true)) {
+      child.lock.get().expired.set(true);
+      final Process proc = child.process.get();
       if (proc != null) {
         while (proc.isAlive()) {
           try {
@@ -1158,18 +1468,42 @@ public class JBrowserDriver extends RemoteWebDriver {
           }
         }
       }
-      try {
-        heartbeatThread.interrupt();
-        heartbeatThread.join();   
-      } catch (Exception e) {}
-      FileUtils.deleteQuietly(tmpDir);
-      synchronized (locks) {
-        locks.remove(lock);
+      child.stopHeartbeat();
+      if (child.framedClient.get() != null) {
+        child.framedClient.get().close();
+      }
+      if (child.classDataArchive.get() != null) {
+        publishClassDataArchive(child.classDataArchive.get());
       }
-      synchronized (waiting) {
-        portGroupsActive.remove(configuredPortGroup.get());
-        waiting.notifyAll();
+      FileUtils.deleteQuietly(child.tmpDir);
+      synchronized (locks) {
+        locks.remove(child.lock.get());
       }
+      PortGroupScheduler.release(child.configuredPortGroup.get());
+    }
+  }
+
+  /**
+   * Ends this driver's session in a process shared with other sessions,
+   * and ends the process if no other sessions remain.
+   */
+  private void endSession() {
+    if (lock.expired.compareAndSet(false, true)
+        && ProcessPool.releaseShared(child, settings)) {
+      endProcess(child);
+    }
+  }
+
+  /**
+   * Expires the lock held by the process's previous session, so neither that driver
+   * nor any of its elements can reach the process after it's handed to a new session.
+   */
+  static void renewLock(ChildProcess child) {
+    synchronized (locks) {
+      SocketLock prev = child.lock.getAndSet(new SocketLock());
+      prev.expired.set(true);
+      locks.remove(prev);
+      locks.add(child.lock.get());
     }
   }
 
@@ -1204,14 +1538,31 @@ public class JBrowserDriver extends RemoteWebDriver {
   @Override
   public void quit() {
     saveData();
+    if (settings.sessionsPerProcess() > 1) {
+      try {
+        synchronized (lock.validated()) {
+          remote.quit();
+          remote.closeSession();
+        }
+      } catch (Throwable t) {
+        Util.handleException(t);
+      } finally {
+        endSession();
+      }
+      return;
+    }
+    boolean recycled = false;
     try {
       synchronized (lock.validated()) {
         remote.quit();
       }
+      recycled = child.classDataArchive.get() == null && ProcessPool.recycle(child, settings);
     } catch (Throwable t) {
       Util.handleException(t);
     } finally {
-      endProcess();
+      if (!recycled && child.lock.get() == lock) {
+        endProcess(child);
+      }
     }
   }
 
@@ -1240,7 +1591,16 @@ public class JBrowserDriver extends RemoteWebDriver {
    * Ignore any warnings about an @Override annotation missing.
    */
   public void kill() {
-    endProcess();
+    if (settings.sessionsPerProcess() > 1) {
+      try {
+        synchronized (lock.validated()) {
+          remote.closeSession();
+        }
+      } catch (Throwable t) {}
+      endSession();
+    } else if (child.lock.get() == lock) {
+      endProcess(child);
+    }
   }
 
   @Override
@@ -1274,6 +1634,35 @@ public class JBrowserDriver extends RemoteWebDriver {
     }
   }
 
+  /**
+   * @return Statistics for browser actions in this driver's process which waited for a page load to complete.
+   */
+  public AppThreadStats appThreadStats() {
+    try {
+      synchronized (lock.validated()) {
+        return remote.appThreadStats();
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
+  /**
+   * @return Statistics for how long page loads in this driver's process waited for AJAX requests to settle.
+   * @see Settings.Builder#ajaxWait(long)
+   */
+  public PageLoadStats pageLoadStats() {
+    try {
+      synchronized (lock.validated()) {
+        return remote.pageLoadStats();
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
   /**
    * @return Temporary directory where downloaded files are saved.
    */
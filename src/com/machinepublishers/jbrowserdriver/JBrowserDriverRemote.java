@@ -21,6 +21,7 @@ import java.io.File;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.openqa.selenium.By;
@@ -38,6 +39,12 @@ interface JBrowserDriverRemote extends Remote {
 
   void reset() throws RemoteException;
 
+  void recycle() throws RemoteException;
+
+  String newSession() throws RemoteException;
+
+  void closeSession() throws RemoteException;
+
   int getStatusCode() throws RemoteException;
 
   void pageWait() throws RemoteException;
@@ -90,6 +97,8 @@ interface JBrowserDriverRemote extends Remote {
 
   void get(String url) throws RemoteException;
 
+  void get(String url, Readiness readiness) throws RemoteException;
+
   String getCurrentUrl() throws RemoteException;
 
   String getTitle() throws RemoteException;
@@ -98,6 +107,10 @@ interface JBrowserDriverRemote extends Remote {
 
   ElementRemote findElement(By by) throws RemoteException;
 
+  List<Map<String, Object>> getProperties(List<ElementHandle.Id> elements, List<String> properties) throws RemoteException;
+
+  List<Map<String, Object>> getProperties(By by, List<String> properties) throws RemoteException;
+
   String getPageSource() throws RemoteException;
 
   void close() throws RemoteException;
@@ -118,6 +131,10 @@ interface JBrowserDriverRemote extends Remote {
 
   File cacheDir() throws RemoteException;
 
+  AppThreadStats appThreadStats() throws RemoteException;
+
+  PageLoadStats pageLoadStats() throws RemoteException;
+
   File attachmentsDir() throws RemoteException;
 
   File mediaDir() throws RemoteException;
@@ -24,12 +24,15 @@ import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.URL;
+import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.RMISocketFactory;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -71,13 +74,14 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
   private static final AtomicInteger childPort = new AtomicInteger();
   private static final AtomicReference<SocketFactory> socketFactory = new AtomicReference<SocketFactory>();
   private static Registry registry;
+  private static final AtomicReference<FramedServer> framedServer = new AtomicReference<FramedServer>();
 
   /*
    * RMI entry point.
    */
   public static void main(String[] args) {
     try {
-      CookieManager.setDefault(new CookieStore());
+      CookieManager.setDefault(Session.cookieHandler());
       try {
         URL.setURLStreamHandlerFactory(new StreamHandler());
       } catch (Throwable t) {
@@ -121,17 +125,37 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
         }
       }
       registry = registryTmp;
-      registry.rebind("HeartbeatRemote", new HeartbeatServer());
-      registry.rebind("JBrowserDriverRemote", new JBrowserDriverServer());
+      if (args.length > 3 && "framed".equals(args[3])) {
+        framedServer.set(new FramedServer(host));
+      }
+      bind("HeartbeatRemote", new HeartbeatServer());
+      bind("JBrowserDriverRemote", new JBrowserDriverServer(Session.primary));
 
       RMISocketFactory.setSocketFactory(socketFactory.get());
-      System.out.println("ready on ports " + childPort.get() + "/" + parentPort + "/" + parentAltPort);
+      System.out.println("ready on ports " + childPort.get() + "/" + parentPort + "/" + parentAltPort
+          + (framedServer.get() == null ? "" : "/" + framedServer.get().port()));
     } catch (Throwable t) {
       t.printStackTrace();
       System.exit(1);
     }
   }
 
+  private static void bind(String name, Remote remote) throws RemoteException {
+    registry.rebind(name, remote);
+    if (framedServer.get() != null) {
+      framedServer.get().bind(name, remote);
+    }
+  }
+
+  private static void unbind(String name) {
+    try {
+      registry.unbind(name);
+    } catch (Throwable t) {}
+    if (framedServer.get() != null) {
+      framedServer.get().unbind(name);
+    }
+  }
+
   private static int findPort(String host) throws IOException {
     ServerSocket socket = null;
     try {
@@ -153,13 +177,20 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
   }
 
   final AtomicReference<Context> context = new AtomicReference<Context>();
+  private final Session session;
 
-  public JBrowserDriverServer() throws RemoteException {}
+  public JBrowserDriverServer() throws RemoteException {
+    this(Session.primary);
+  }
+
+  JBrowserDriverServer(Session session) throws RemoteException {
+    this.session = session;
+  }
 
   @Override
   public void setUp(final Settings settings) {
-    SettingsManager.register(settings);
-    context.set(new Context());
+    session.register(settings);
+    context.set(new Context(session));
   }
 
   @Override
@@ -188,10 +219,12 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
       return null;
     });
     Accessor.getPageFor(context.get().item().engine.get()).stop();
-    ((CookieStore) CookieManager.getDefault()).clear();
-    StatusMonitor.instance().clear();
-    LogsServer.instance().clear(null);
-    SettingsManager.register(settings);
+    session.cookieStore().clear();
+    if (!Session.shared()) {
+      StatusMonitor.detached().clear();
+      LogsServer.instance().clear(null);
+    }
+    session.register(settings);
     context.get().reset(this);
   }
 
@@ -200,7 +233,72 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    * browser and creating a new instance.
    */
   public void reset() {
-    reset(SettingsManager.settings());
+    reset(session.settings());
+  }
+
+  /**
+   * Clear all state left by the current session so that this process
+   * can be set up again for a new session.
+   */
+  @Override
+  public void recycle() {
+    disposeContext();
+    session.cookieStore().clear();
+    StatusMonitor.detached().clear();
+    LogsServer.instance().clear(null);
+    ElementServer.clearScriptParams();
+    StreamConnection.clearSavedFiles();
+  }
+
+  /**
+   * Create an additional session in this process, with its own settings,
+   * cookies, and HTTP client, and bind it in the registry.
+   * 
+   * @return Registry name of the new session
+   */
+  @Override
+  public String newSession() {
+    try {
+      Session newSession = Session.create();
+      String name = "JBrowserDriverRemote/" + newSession.id;
+      bind(name, new JBrowserDriverServer(newSession));
+      return name;
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
+  /**
+   * End this session while leaving the process and its other sessions running.
+   */
+  @Override
+  public void closeSession() {
+    disposeContext();
+    if (session == Session.primary) {
+      session.cookieStore().clear();
+    } else {
+      session.close();
+      unbind("JBrowserDriverRemote/" + session.id);
+      try {
+        unexportObject(this, true);
+      } catch (Throwable t) {}
+    }
+  }
+
+  private void disposeContext() {
+    final Context prevContext = context.getAndSet(null);
+    if (prevContext != null) {
+      final ContextItem item = prevContext.item();
+      if (item != null && item.engine.get() != null) {
+        AppThread.exec(() -> {
+          item.engine.get().getLoadWorker().cancel();
+          return null;
+        });
+        Accessor.getPageFor(item.engine.get()).stop();
+      }
+      prevContext.dispose();
+    }
   }
 
   /**
@@ -301,12 +399,20 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   @Override
   public void get(final String url) {
+    get(url, Readiness.ajaxIdle());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void get(final String url, final Readiness readiness) {
     init();
     long start = System.currentTimeMillis();
     try {
       AppThread.exec(context.get().item().statusCode,
           context.get().timeouts.get().getPageLoadTimeoutMS(), () -> {
-            context.get().item().httpListener.get().resetStatusCode();
+            context.get().item().httpListener.get().resetStatusCode(readiness);
             context.get().item().engine.get().load(url);
             return null;
           });
@@ -348,6 +454,30 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
     return ElementServer.create(context.get().item()).findElements(by);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Map<String, Object>> getProperties(List<ElementHandle.Id> elements, List<String> properties) {
+    init();
+    List<ElementServer> servers = new ArrayList<ElementServer>(elements.size());
+    for (ElementHandle.Id element : elements) {
+      servers.add(element == null ? null : ElementTableServer.resolve(element));
+    }
+    return ElementServer.properties(context.get().item().statusCode, servers, properties);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Map<String, Object>> getProperties(By by, List<String> properties) {
+    init();
+    final ContextItem item = context.get().item();
+    return AppThread.exec(item.statusCode,
+        () -> ElementServer.properties(item.statusCode, ElementServer.create(item).findElements(by), properties));
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -635,7 +765,23 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   @Override
   public File cacheDir() {
-    return StreamConnection.cacheDir();
+    return session.client().cacheDir();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public AppThreadStats appThreadStats() {
+    return AppThread.stats();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PageLoadStats pageLoadStats() {
+    return AjaxListener.stats();
   }
 
   /**
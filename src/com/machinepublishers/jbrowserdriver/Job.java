@@ -17,15 +17,17 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 class Job {
 
   final Settings settings;
-  final AtomicReference<PortGroup> portGroup;
+  final CompletableFuture<PortGroup> portGroup = new CompletableFuture<PortGroup>();
+  final AtomicReference<PortGroup> granted = new AtomicReference<PortGroup>();
+  final long created = System.currentTimeMillis();
 
-  Job(Settings settings, AtomicReference<PortGroup> portGroup) {
+  Job(Settings settings) {
     this.settings = settings;
-    this.portGroup = portGroup;
   }
 }
@@ -0,0 +1,264 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.Header;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.HttpCacheUpdateException;
+import org.apache.http.client.cache.Resource;
+
+/**
+ * Keeps recently used cache entries in memory, in front of another cache storage.
+ * <p>
+ * Entries are weighed by their approximate size in bytes and held in a segmented LRU: new entries enter a
+ * probationary segment and are promoted to a protected segment when used again, so assets requested repeatedly
+ * aren't pushed out by a burst of one-off responses. Writes go through to the backing storage.
+ * <p>
+ * Each write bumps a generation shared by the keys hashing to the same stripe, once the backing storage has it.
+ * An entry read from the backing storage is only admitted if its stripe's generation hasn't changed since the
+ * read began, so a read racing a write can't put back the entry the write replaced or removed.
+ */
+class MemoryCache implements HttpCacheStorage {
+  private static final int LOG_INTERVAL = 1000;
+  private static final int STRIPES = 64;
+
+  private final HttpCacheStorage storage;
+  private final long maxWeight;
+  private final long maxProtectedWeight;
+  private final long maxEntryWeight;
+  private final LinkedHashMap<String, Node> probation = new LinkedHashMap<String, Node>(16, .75f, true);
+  private final LinkedHashMap<String, Node> protectedNodes = new LinkedHashMap<String, Node>(16, .75f, true);
+  private long probationWeight;
+  private long protectedWeight;
+  private final long[] generations = new long[STRIPES];
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final Logger logger;
+  private final Consumer<String> evicted;
+
+  private static class Node {
+    private final HttpCacheEntry entry;
+    private final long weight;
+
+    Node(HttpCacheEntry entry, long weight) {
+      this.entry = entry;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * @param logger
+   *          Where to log outside of a browser process, or null to use the browser's logs
+   * @param evicted
+   *          Told the key of each entry evicted or too large to keep, or null. It's called while this cache
+   *          is locked, so it mustn't block.
+   */
+  MemoryCache(HttpCacheStorage storage, long maxWeight, Logger logger, Consumer<String> evicted) {
+    this.storage = storage;
+    this.logger = logger;
+    this.evicted = evicted;
+    this.maxWeight = maxWeight;
+    this.maxProtectedWeight = maxWeight * 4 / 5;
+    this.maxEntryWeight = maxWeight / 8;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public HttpCacheEntry getEntry(String key) throws IOException {
+    HttpCacheEntry entry = null;
+    final long generation;
+    synchronized (this) {
+      generation = generations[stripe(key)];
+      Node node = protectedNodes.get(key);
+      if (node == null) {
+        node = probation.remove(key);
+        if (node != null) {
+          probationWeight -= node.weight;
+          protectedNodes.put(key, node);
+          protectedWeight += node.weight;
+          demote();
+        }
+      }
+      if (node != null) {
+        entry = node.entry;
+      }
+    }
+    if (entry != null) {
+      count(hits);
+      return entry;
+    }
+    count(misses);
+    entry = storage.getEntry(key);
+    if (entry != null) {
+      synchronized (this) {
+        if (generations[stripe(key)] == generation) {
+          admit(key, entry);
+        }
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void putEntry(String key, HttpCacheEntry entry) throws IOException {
+    storage.putEntry(key, entry);
+    synchronized (this) {
+      ++generations[stripe(key)];
+      admit(key, entry);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeEntry(String key) throws IOException {
+    synchronized (this) {
+      discard(key);
+    }
+    try {
+      storage.removeEntry(key);
+    } finally {
+      synchronized (this) {
+        ++generations[stripe(key)];
+        discard(key);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
+    //the backing storage does the read-modify-write under its own locks, and the next read refills memory
+    synchronized (this) {
+      discard(key);
+    }
+    try {
+      storage.updateEntry(key, callback);
+    } finally {
+      synchronized (this) {
+        ++generations[stripe(key)];
+        discard(key);
+      }
+    }
+  }
+
+  void log() {
+    String message = "Memory cache: hits=" + hits.get() + ", misses=" + misses.get()
+        + ", evictions=" + evictions.get() + ", bytes=" + weight();
+    if (logger == null) {
+      LogsServer.instance().trace(message);
+    } else {
+      logger.log(Level.FINE, message);
+    }
+  }
+
+  private synchronized long weight() {
+    return probationWeight + protectedWeight;
+  }
+
+  private void count(AtomicLong counter) {
+    counter.incrementAndGet();
+    if ((hits.get() + misses.get()) % LOG_INTERVAL == 0) {
+      log();
+    }
+  }
+
+  private static int stripe(String key) {
+    return (key.hashCode() & 0x7fffffff) % STRIPES;
+  }
+
+  private void admit(String key, HttpCacheEntry entry) {
+    discard(key);
+    long weight = weigh(key, entry);
+    if (weight > maxEntryWeight) {
+      if (evicted != null) {
+        evicted.accept(key);
+      }
+      return;
+    }
+    probation.put(key, new Node(entry, weight));
+    probationWeight += weight;
+    while (probationWeight + protectedWeight > maxWeight) {
+      Map<String, Node> victims = probation.isEmpty() ? protectedNodes : probation;
+      Iterator<Map.Entry<String, Node>> eldest = victims.entrySet().iterator();
+      Map.Entry<String, Node> victimEntry = eldest.next();
+      Node victim = victimEntry.getValue();
+      eldest.remove();
+      if (evicted != null) {
+        evicted.accept(victimEntry.getKey());
+      }
+      if (victims == probation) {
+        probationWeight -= victim.weight;
+      } else {
+        protectedWeight -= victim.weight;
+      }
+      evictions.incrementAndGet();
+    }
+  }
+
+  private void demote() {
+    while (protectedWeight > maxProtectedWeight) {
+      Iterator<Map.Entry<String, Node>> eldest = protectedNodes.entrySet().iterator();
+      Map.Entry<String, Node> demoted = eldest.next();
+      eldest.remove();
+      protectedWeight -= demoted.getValue().weight;
+      probation.put(demoted.getKey(), demoted.getValue());
+      probationWeight += demoted.getValue().weight;
+    }
+  }
+
+  private void discard(String key) {
+    Node node = probation.remove(key);
+    if (node != null) {
+      probationWeight -= node.weight;
+    }
+    node = protectedNodes.remove(key);
+    if (node != null) {
+      protectedWeight -= node.weight;
+    }
+  }
+
+  private static long weigh(String key, HttpCacheEntry entry) {
+    long weight = 64 + 2 * key.length();
+    for (Header header : entry.getAllHeaders()) {
+      weight += 2 * (header.getName().length() + (header.getValue() == null ? 0 : header.getValue().length()));
+    }
+    Resource resource = entry.getResource();
+    return resource == null ? weight : weight + resource.length();
+  }
+}
@@ -0,0 +1,93 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+
+/**
+ * Point-in-time statistics for page loads in a child browser process, measuring the time spent waiting for
+ * AJAX requests to settle before a page is considered loaded.
+ * 
+ * @see JBrowserDriver#pageLoadStats()
+ * @see Settings.Builder#ajaxWait(long)
+ */
+public class PageLoadStats implements Serializable {
+  private final long loads;
+  private final long timeouts;
+  private final long averageSettleMillis;
+  private final long maxSettleMillis;
+  private final long resourceEvents;
+
+  PageLoadStats(long loads, long timeouts, long averageSettleMillis, long maxSettleMillis, long resourceEvents) {
+    this.loads = loads;
+    this.timeouts = timeouts;
+    this.averageSettleMillis = averageSettleMillis;
+    this.maxSettleMillis = maxSettleMillis;
+    this.resourceEvents = resourceEvents;
+  }
+
+  /**
+   * @return Number of page loads completed, including those which timed out.
+   */
+  public long loads() {
+    return loads;
+  }
+
+  /**
+   * @return Number of page loads which reached the page load timeout before requests settled.
+   */
+  public long timeouts() {
+    return timeouts;
+  }
+
+  /**
+   * @return Average milliseconds from the last resource starting or finishing until the status code was published.
+   */
+  public long averageSettleMillis() {
+    return averageSettleMillis;
+  }
+
+  /**
+   * @return Longest milliseconds from the last resource starting or finishing until the status code was published.
+   */
+  public long maxSettleMillis() {
+    return maxSettleMillis;
+  }
+
+  /**
+   * @return Number of resource start and finish events received from the browser. Sampling this
+   *         before and after a workload gives the event throughput.
+   */
+  public long resourceEvents() {
+    return resourceEvents;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder()
+        .append("loads=").append(loads)
+        .append(", timeouts=").append(timeouts)
+        .append(", averageSettleMillis=").append(averageSettleMillis)
+        .append(", maxSettleMillis=").append(maxSettleMillis)
+        .append(", resourceEvents=").append(resourceEvents)
+        .toString();
+  }
+}
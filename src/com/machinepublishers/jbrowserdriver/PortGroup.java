@@ -47,6 +47,11 @@ class PortGroup implements Serializable {
     return obj instanceof PortGroup && ((PortGroup) obj).id.equals(id);
   }
 
+  @Override
+  public String toString() {
+    return id;
+  }
+
   boolean conflicts(PortGroup other) {
     if (other != null) {
       for (long thisPort : ports) {
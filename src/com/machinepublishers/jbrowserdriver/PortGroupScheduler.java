@@ -0,0 +1,254 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.TimeoutException;
+
+/**
+ * Assigns port groups to child processes. Each distinct list of port groups
+ * (i.e., each {@link Settings#portGroups()}) has a free-list of its groups and a
+ * FIFO queue of jobs waiting on it. Acquiring and releasing only touch the free-list
+ * and the set of ports in use, rather than comparing every waiting job against
+ * every active port group.
+ */
+class PortGroupScheduler {
+  private static final Object lock = new Object();
+  private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "JBrowserDriver process queue timer");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final Executor launcher = JBrowserDriver.launcher;
+  private static final Map<List<PortGroup>, Pool> pools = new HashMap<List<PortGroup>, Pool>();
+  private static final Map<PortGroup, Pool> active = new HashMap<PortGroup, Pool>();
+  private static final Set<Long> portsActive = new HashSet<Long>();
+  private static int queued;
+  private static int maxQueued;
+  private static long acquisitions;
+  private static long timeouts;
+  private static long waitMSTotal;
+  private static long waitMSMax;
+
+  private static class Pool {
+    final List<PortGroup> portGroups;
+    final ArrayDeque<PortGroup> free;
+    final ArrayDeque<Job> waiting = new ArrayDeque<Job>();
+    int activeCount;
+
+    Pool(List<PortGroup> portGroups) {
+      this.portGroups = portGroups;
+      this.free = new ArrayDeque<PortGroup>(portGroups);
+    }
+  }
+
+  /**
+   * Waits for a port group from the settings which doesn't conflict with any port group in use.
+   * Jobs waiting on the same port groups are served in the order they arrived.
+   * 
+   * @throws TimeoutException
+   *           If {@link Settings#processQueueTimeout()} is positive and elapses first.
+   */
+  static PortGroup acquire(Settings settings) {
+    try {
+      return acquireAsync(settings).join();
+    } catch (CompletionException e) {
+      Util.handleException(e.getCause());
+      return null;
+    }
+  }
+
+  /**
+   * Same as {@link #acquire(Settings)} but doesn't block the calling thread.
+   */
+  static CompletableFuture<PortGroup> acquireAsync(final Settings settings) {
+    final Job job = new Job(settings);
+    final Pool pool;
+    synchronized (lock) {
+      pool = pool(settings.portGroups());
+      if (pool.waiting.isEmpty() && grant(pool, job)) {
+        job.portGroup.complete(job.granted.get());
+        return job.portGroup;
+      }
+      pool.waiting.addLast(job);
+      ++queued;
+      maxQueued = Math.max(maxQueued, queued);
+    }
+    final long timeout = settings.processQueueTimeout();
+    if (timeout > 0) {
+      timer.schedule(() -> {
+        synchronized (lock) {
+          if (pool.waiting.remove(job)) {
+            --queued;
+            ++timeouts;
+            discardIfUnused(pool);
+          } else {
+            return;
+          }
+        }
+        job.portGroup.completeExceptionally(new TimeoutException("Timed out after " + timeout
+            + "ms waiting for one of " + settings.portGroups().size() + " browser processes to become available."));
+      }, timeout, TimeUnit.MILLISECONDS);
+    }
+    return job.portGroup;
+  }
+
+  /**
+   * Takes a port group only if one is free now and no job is waiting on these port groups,
+   * so that processes launched ahead of time never hold up a driver.
+   * 
+   * @return The port group, or null if none could be taken without waiting.
+   */
+  static PortGroup tryAcquire(Settings settings) {
+    final Job job = new Job(settings);
+    synchronized (lock) {
+      Pool pool = pool(settings.portGroups());
+      if (pool.waiting.isEmpty() && grant(pool, job)) {
+        return job.granted.get();
+      }
+      discardIfUnused(pool);
+      return null;
+    }
+  }
+
+  /**
+   * @return Whether a job is waiting on this port group or on one conflicting with it.
+   */
+  static boolean contended(PortGroup portGroup) {
+    if (portGroup == null) {
+      return false;
+    }
+    synchronized (lock) {
+      for (Pool pool : pools.values()) {
+        if (!pool.waiting.isEmpty()) {
+          for (PortGroup cur : pool.portGroups) {
+            if (cur.conflicts(portGroup)) {
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the port group to its free-list and hands it, or any port groups
+   * which no longer conflict, to the jobs waiting longest.
+   */
+  static void release(PortGroup portGroup) {
+    if (portGroup == null) {
+      return;
+    }
+    synchronized (lock) {
+      Pool pool = active.remove(portGroup);
+      if (pool == null) {
+        return;
+      }
+      portsActive.remove(portGroup.child);
+      portsActive.remove(portGroup.parent);
+      portsActive.remove(portGroup.parentAlt);
+      --pool.activeCount;
+      pool.free.addLast(portGroup);
+      serve(pool);
+      if (portGroup.child > -1) {
+        //explicit ports might be shared with port groups of other settings
+        for (Pool other : new ArrayList<Pool>(pools.values())) {
+          if (other != pool) {
+            serve(other);
+          }
+        }
+      }
+      discardIfUnused(pool);
+    }
+  }
+
+  static ProcessQueueStats stats() {
+    synchronized (lock) {
+      return new ProcessQueueStats(queued, maxQueued, active.size(), acquisitions, timeouts,
+          acquisitions == 0 ? 0 : waitMSTotal / acquisitions, waitMSMax);
+    }
+  }
+
+  private static Pool pool(List<PortGroup> portGroups) {
+    Pool pool = pools.get(portGroups);
+    if (pool == null) {
+      pool = new Pool(portGroups);
+      pools.put(portGroups, pool);
+    }
+    return pool;
+  }
+
+  private static void serve(Pool pool) {
+    while (!pool.waiting.isEmpty() && grant(pool, pool.waiting.peekFirst())) {
+      Job job = pool.waiting.removeFirst();
+      --queued;
+      //complete outside of the lock so dependent stages can't run while holding it
+      launcher.execute(() -> {
+        if (!job.portGroup.complete(job.granted.get())) {
+          release(job.granted.get());
+        }
+      });
+    }
+    discardIfUnused(pool);
+  }
+
+  private static boolean grant(Pool pool, Job job) {
+    for (Iterator<PortGroup> iter = pool.free.iterator(); iter.hasNext();) {
+      PortGroup cur = iter.next();
+      if (!portsActive.contains(cur.child)
+          && !portsActive.contains(cur.parent)
+          && !portsActive.contains(cur.parentAlt)) {
+        iter.remove();
+        portsActive.add(cur.child);
+        portsActive.add(cur.parent);
+        portsActive.add(cur.parentAlt);
+        active.put(cur, pool);
+        ++pool.activeCount;
+        long waitMS = System.currentTimeMillis() - job.created;
+        ++acquisitions;
+        waitMSTotal += waitMS;
+        waitMSMax = Math.max(waitMSMax, waitMS);
+        job.granted.set(cur);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void discardIfUnused(Pool pool) {
+    //settings are often built per instance, so don't hold on to their port groups once idle
+    if (pool.activeCount == 0 && pool.waiting.isEmpty()) {
+      pools.remove(pool.portGroups);
+    }
+  }
+}
@@ -0,0 +1,331 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Keeps child browser processes launched ahead of time so that constructing a
+ * {@link JBrowserDriver} doesn't wait on JVM startup. Processes are pooled by
+ * the settings which affect how they're launched, so a pooled process is only
+ * handed to a driver whose settings would have launched an equivalent process.
+ */
+class ProcessPool {
+  private static final Map<String, ProcessPool> pools = new HashMap<String, ProcessPool>();
+  private static final Map<String, List<ChildProcess>> shared = new HashMap<String, List<ChildProcess>>();
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final AtomicLong recycled = new AtomicLong();
+  private static final AtomicLong launches = new AtomicLong();
+  private static final AtomicLong launchMSTotal = new AtomicLong();
+  private static final AtomicLong launchMSMax = new AtomicLong();
+  private final LinkedList<ChildProcess> idle = new LinkedList<ChildProcess>();
+  private final AtomicInteger launching = new AtomicInteger();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> clear(), "JBrowserDriver process pool shutdown"));
+  }
+
+  private static String key(Settings settings) {
+    StringBuilder builder = new StringBuilder()
+        .append(settings.host()).append('\n')
+        .append(settings.headless()).append('\n')
+        .append(settings.javaBinary()).append('\n')
+        .append(settings.javaExportModules()).append('\n')
+        .append(settings.framedTransport()).append('\n')
+        //the cache daemon's port and the cache directory are fixed when the process launches
+        .append(settings.cache()).append('\n')
+        .append(settings.cacheDaemon()).append('\n')
+        .append(settings.cacheDir()).append('\n')
+        .append(settings.cacheDirSize()).append('\n')
+        .append(settings.cacheDirAge()).append('\n')
+        .append(settings.cacheMemory()).append('\n')
+        .append(StringUtils.join(settings.javaOptions(), '\t')).append('\n');
+    for (PortGroup portGroup : settings.portGroups()) {
+      if (portGroup.child > -1) {
+        builder.append(portGroup).append(',');
+      }
+    }
+    return builder.toString();
+  }
+
+  private static ProcessPool pool(Settings settings) {
+    String key = key(settings);
+    synchronized (pools) {
+      ProcessPool pool = pools.get(key);
+      if (pool == null) {
+        pool = new ProcessPool();
+        pools.put(key, pool);
+      }
+      return pool;
+    }
+  }
+
+  /**
+   * @return An idle process compatible with the settings, or null if the pool
+   *         is disabled or has none available.
+   */
+  static ChildProcess take(Settings settings) {
+    if (settings.sessionsPerProcess() > 1
+        || (settings.warmProcesses() < 1 && settings.maxProcessReuse() < 1)) {
+      return null;
+    }
+    ProcessPool pool = pool(settings);
+    ChildProcess child = null;
+    List<ChildProcess> dead = new ArrayList<ChildProcess>();
+    synchronized (pool.idle) {
+      while (!pool.idle.isEmpty()) {
+        ChildProcess cur = pool.idle.removeFirst();
+        if (cur.uses.get() == 0 ? cur.isAlive() : cur.reusable(settings)) {
+          child = cur;
+          break;
+        }
+        dead.add(cur);
+      }
+    }
+    for (ChildProcess cur : dead) {
+      JBrowserDriver.endProcess(cur);
+    }
+    if (child == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return child;
+  }
+
+  /**
+   * Clears the state left by a finished session and returns the process to the pool,
+   * unless it has exceeded its reuse count or age.
+   * 
+   * @return Whether the process was returned to the pool. If not, the caller must end it.
+   */
+  static boolean recycle(ChildProcess child, Settings settings) {
+    if (settings.sessionsPerProcess() > 1 || !child.reusable(settings)
+        || PortGroupScheduler.contended(child.configuredPortGroup.get())) {
+      return false;
+    }
+    try {
+      synchronized (child.lock.get().validated()) {
+        child.remote.get().recycle();
+      }
+    } catch (Throwable t) {
+      return false;
+    }
+    JBrowserDriver.renewLock(child);
+    child.daemon(true);
+    ProcessPool pool = pool(settings);
+    synchronized (pool.idle) {
+      pool.idle.addLast(child);
+    }
+    recycled.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Launches processes in the background until the pool for these settings
+   * holds the configured number of idle processes. Each process holds one of the
+   * port groups, so idle, launching, and in-use processes together never exceed
+   * {@link Settings#portGroups()}. A port group is only taken for the pool when it's
+   * free and no driver is waiting on it.
+   */
+  static void refill(final Settings settings) {
+    if (settings.warmProcesses() < 1 || settings.sessionsPerProcess() > 1) {
+      return;
+    }
+    final ProcessPool pool = pool(settings);
+    while (true) {
+      synchronized (pool.idle) {
+        if (pool.idle.size() + pool.launching.get() >= settings.warmProcesses()) {
+          return;
+        }
+        pool.launching.incrementAndGet();
+      }
+      PortGroup portGroup = PortGroupScheduler.tryAcquire(settings);
+      if (portGroup == null) {
+        pool.launching.decrementAndGet();
+        return;
+      }
+      JBrowserDriver.launchAsync(settings, portGroup).whenComplete((child, t) -> {
+        boolean contended = child != null && PortGroupScheduler.contended(child.configuredPortGroup.get());
+        synchronized (pool.idle) {
+          if (child != null && !contended) {
+            pool.idle.addLast(child);
+          }
+          pool.launching.decrementAndGet();
+        }
+        if (contended) {
+          //a driver started waiting on the port group while this process was launching
+          JBrowserDriver.endProcess(child);
+        }
+        Logger logger = settings.logger();
+        if (t != null && logger != null) {
+          logger.log(Level.WARNING, "Could not launch pooled browser process.",
+              t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+        }
+      });
+    }
+  }
+
+  /**
+   * Ends an idle process holding one of these port groups, or one conflicting with them,
+   * so that a driver waiting on the port groups gets one rather than the pool keeping it.
+   * 
+   * @return Whether a process was ended.
+   */
+  static boolean evict(List<PortGroup> portGroups) {
+    ChildProcess evicted = null;
+    synchronized (pools) {
+      for (ProcessPool pool : pools.values()) {
+        synchronized (pool.idle) {
+          for (Iterator<ChildProcess> iter = pool.idle.iterator(); evicted == null && iter.hasNext();) {
+            ChildProcess cur = iter.next();
+            for (PortGroup portGroup : portGroups) {
+              if (portGroup.conflicts(cur.configuredPortGroup.get())) {
+                iter.remove();
+                evicted = cur;
+                break;
+              }
+            }
+          }
+        }
+        if (evicted != null) {
+          break;
+        }
+      }
+    }
+    if (evicted != null) {
+      JBrowserDriver.endProcess(evicted);
+    }
+    return evicted != null;
+  }
+
+  /**
+   * @return A running process, launched with settings equivalent to these, which has room for another
+   *         session, or null if there's none. The process's session count is incremented.
+   */
+  static ChildProcess takeShared(Settings settings) {
+    if (settings.sessionsPerProcess() < 2) {
+      return null;
+    }
+    synchronized (shared) {
+      List<ChildProcess> children = shared.get(key(settings));
+      if (children != null) {
+        for (ChildProcess child : children) {
+          if (child.isAlive() && child.sessions.get() < settings.sessionsPerProcess()) {
+            child.sessions.incrementAndGet();
+            return child;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes a process available to other sessions once its first session is set up.
+   */
+  static void addShared(ChildProcess child, Settings settings) {
+    String key = key(settings);
+    synchronized (shared) {
+      child.sessions.incrementAndGet();
+      List<ChildProcess> children = shared.get(key);
+      if (children == null) {
+        children = new ArrayList<ChildProcess>();
+        shared.put(key, children);
+      }
+      children.add(child);
+    }
+  }
+
+  /**
+   * Decrements the session count of a shared process.
+   * 
+   * @return Whether the process has no more sessions, in which case the caller must end it.
+   */
+  static boolean releaseShared(ChildProcess child, Settings settings) {
+    String key = key(settings);
+    synchronized (shared) {
+      if (child.sessions.decrementAndGet() > 0) {
+        return false;
+      }
+      List<ChildProcess> children = shared.get(key);
+      if (children != null) {
+        children.remove(child);
+        if (children.isEmpty()) {
+          shared.remove(key);
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Ends every idle process.
+   */
+  static void clear() {
+    List<ChildProcess> children = new ArrayList<ChildProcess>();
+    synchronized (pools) {
+      for (ProcessPool pool : pools.values()) {
+        synchronized (pool.idle) {
+          children.addAll(pool.idle);
+          pool.idle.clear();
+        }
+      }
+    }
+    for (ChildProcess child : children) {
+      JBrowserDriver.endProcess(child);
+    }
+  }
+
+  static void recordLaunch(long launchMS) {
+    if (launchMS > -1) {
+      launches.incrementAndGet();
+      launchMSTotal.addAndGet(launchMS);
+      launchMSMax.accumulateAndGet(launchMS, Math::max);
+    }
+  }
+
+  static ProcessPoolStats stats() {
+    int idleTotal = 0;
+    int launchingTotal = 0;
+    synchronized (pools) {
+      for (ProcessPool pool : pools.values()) {
+        synchronized (pool.idle) {
+          idleTotal += pool.idle.size();
+          launchingTotal += pool.launching.get();
+        }
+      }
+    }
+    long launchCount = launches.get();
+    return new ProcessPoolStats(idleTotal, launchingTotal, hits.get(), misses.get(), recycled.get(), launchCount,
+        launchCount == 0 ? 0 : launchMSTotal.get() / launchCount, launchMSMax.get());
+  }
+}
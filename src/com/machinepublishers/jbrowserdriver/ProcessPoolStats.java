@@ -0,0 +1,122 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+/**
+ * Point-in-time statistics for the pool of child browser processes launched ahead of time
+ * or recycled from finished sessions.
+ * 
+ * @see Settings.Builder#warmProcesses(int)
+ * @see Settings.Builder#maxProcessReuse(int)
+ * @see JBrowserDriver#processPoolStats()
+ */
+public class ProcessPoolStats {
+  private final int idle;
+  private final int launching;
+  private final long hits;
+  private final long misses;
+  private final long recycled;
+  private final long launches;
+  private final long averageLaunchMS;
+  private final long maxLaunchMS;
+
+  ProcessPoolStats(int idle, int launching, long hits, long misses, long recycled,
+      long launches, long averageLaunchMS, long maxLaunchMS) {
+    this.idle = idle;
+    this.launching = launching;
+    this.hits = hits;
+    this.misses = misses;
+    this.recycled = recycled;
+    this.launches = launches;
+    this.averageLaunchMS = averageLaunchMS;
+    this.maxLaunchMS = maxLaunchMS;
+  }
+
+  /**
+   * @return Number of launched processes waiting to be handed off.
+   */
+  public int idle() {
+    return idle;
+  }
+
+  /**
+   * @return Number of processes currently being launched in the background.
+   */
+  public int launching() {
+    return launching;
+  }
+
+  /**
+   * @return Number of drivers which received an already launched process.
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * @return Number of drivers which had to launch their own process while the pool was enabled.
+   */
+  public long misses() {
+    return misses;
+  }
+
+  /**
+   * @return Number of processes returned to the pool after their session quit.
+   */
+  public long recycled() {
+    return recycled;
+  }
+
+  /**
+   * @return Number of processes launched, whether by the pool or directly by drivers.
+   */
+  public long launches() {
+    return launches;
+  }
+
+  /**
+   * @return Average milliseconds from launching a process until it was ready.
+   */
+  public long averageLaunchMS() {
+    return averageLaunchMS;
+  }
+
+  /**
+   * @return Longest milliseconds from launching a process until it was ready.
+   */
+  public long maxLaunchMS() {
+    return maxLaunchMS;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder()
+        .append("idle=").append(idle)
+        .append(", launching=").append(launching)
+        .append(", hits=").append(hits)
+        .append(", misses=").append(misses)
+        .append(", recycled=").append(recycled)
+        .append(", launches=").append(launches)
+        .append(", averageLaunchMS=").append(averageLaunchMS)
+        .append(", maxLaunchMS=").append(maxLaunchMS)
+        .toString();
+  }
+}
@@ -0,0 +1,112 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+/**
+ * Point-in-time statistics for drivers waiting on a port group, i.e. waiting
+ * for fewer than the max number of processes to be running.
+ * 
+ * @see Settings.Builder#processes(int)
+ * @see Settings.Builder#processQueueTimeout(long)
+ * @see JBrowserDriver#processQueueStats()
+ */
+public class ProcessQueueStats {
+  private final int queued;
+  private final int maxQueued;
+  private final int active;
+  private final long acquisitions;
+  private final long timeouts;
+  private final long averageWaitMS;
+  private final long maxWaitMS;
+
+  ProcessQueueStats(int queued, int maxQueued, int active, long acquisitions,
+      long timeouts, long averageWaitMS, long maxWaitMS) {
+    this.queued = queued;
+    this.maxQueued = maxQueued;
+    this.active = active;
+    this.acquisitions = acquisitions;
+    this.timeouts = timeouts;
+    this.averageWaitMS = averageWaitMS;
+    this.maxWaitMS = maxWaitMS;
+  }
+
+  /**
+   * @return Number of processes currently waiting for a port group.
+   */
+  public int queued() {
+    return queued;
+  }
+
+  /**
+   * @return Largest number of processes which have waited for a port group at the same time.
+   */
+  public int maxQueued() {
+    return maxQueued;
+  }
+
+  /**
+   * @return Number of port groups currently in use.
+   */
+  public int active() {
+    return active;
+  }
+
+  /**
+   * @return Number of port groups handed out.
+   */
+  public long acquisitions() {
+    return acquisitions;
+  }
+
+  /**
+   * @return Number of times waiting for a port group timed out.
+   */
+  public long timeouts() {
+    return timeouts;
+  }
+
+  /**
+   * @return Average milliseconds waited for a port group.
+   */
+  public long averageWaitMS() {
+    return averageWaitMS;
+  }
+
+  /**
+   * @return Longest milliseconds waited for a port group.
+   */
+  public long maxWaitMS() {
+    return maxWaitMS;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder()
+        .append("queued=").append(queued)
+        .append(", maxQueued=").append(maxQueued)
+        .append(", active=").append(active)
+        .append(", acquisitions=").append(acquisitions)
+        .append(", timeouts=").append(timeouts)
+        .append(", averageWaitMS=").append(averageWaitMS)
+        .append(", maxWaitMS=").append(maxWaitMS)
+        .toString();
+  }
+}
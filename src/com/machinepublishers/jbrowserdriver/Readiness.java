@@ -0,0 +1,142 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+
+/**
+ * Decides when a page load is complete, i.e., when {@link JBrowserDriver#get(String, Readiness)} returns
+ * and when other browser actions are allowed to proceed.
+ * <p>
+ * By default a page is loaded once no AJAX requests have been pending for the time set by
+ * {@link Settings.Builder#ajaxWait(long)}. Jobs which only need the HTML can use a less strict policy so that
+ * they don't wait for trackers, images, and other subresources.
+ */
+public class Readiness implements Serializable {
+  private static final Readiness ajaxIdle = new Readiness(Kind.NETWORK_IDLE, -1, null);
+  private static final Readiness domContentLoaded = new Readiness(Kind.DOM_CONTENT_LOADED, -1, null);
+  private static final Readiness mainDocument = new Readiness(Kind.MAIN_DOCUMENT, -1, null);
+
+  private static enum Kind {
+    NETWORK_IDLE, DOM_CONTENT_LOADED, MAIN_DOCUMENT, SCRIPT
+  }
+
+  private final Kind kind;
+  private final long idleMS;
+  private final String script;
+
+  private Readiness(Kind kind, long idleMS, String script) {
+    this.kind = kind;
+    this.idleMS = idleMS;
+    this.script = script;
+  }
+
+  /**
+   * The page is loaded once no AJAX requests are pending for the time configured by
+   * {@link Settings.Builder#ajaxWait(long)}, ignoring requests that take longer than
+   * {@link Settings.Builder#ajaxResourceTimeout(long)}. This is the default.
+   * 
+   * @return Readiness policy
+   */
+  public static Readiness ajaxIdle() {
+    return ajaxIdle;
+  }
+
+  /**
+   * The page is loaded once no AJAX requests are pending for the given time, ignoring requests that take longer
+   * than {@link Settings.Builder#ajaxResourceTimeout(long)}.
+   * 
+   * @param idleMS
+   *          Idle time in milliseconds
+   * @return Readiness policy
+   */
+  public static Readiness networkIdle(long idleMS) {
+    return new Readiness(Kind.NETWORK_IDLE, Math.max(idleMS, 0), null);
+  }
+
+  /**
+   * The page is loaded once the HTML of the main frame has been parsed, as with the DOMContentLoaded event.
+   * Images, stylesheets, frames, and AJAX requests may still be loading.
+   * 
+   * @return Readiness policy
+   */
+  public static Readiness domContentLoaded() {
+    return domContentLoaded;
+  }
+
+  /**
+   * The page is loaded once the main frame finishes loading, as with the window load event. AJAX requests
+   * made after that are not waited for.
+   * 
+   * @return Readiness policy
+   */
+  public static Readiness mainDocument() {
+    return mainDocument;
+  }
+
+  /**
+   * The page is loaded once the given JavaScript expression is truthy. It's evaluated in the main frame,
+   * once the HTML has been parsed, and again each time a resource starts or finishes loading or every
+   * 50ms otherwise, until the page load timeout is reached.
+   * 
+   * @param expression
+   *          JavaScript expression, e.g., <code>document.querySelector('#results') != null</code>
+   * @return Readiness policy
+   */
+  public static Readiness script(String expression) {
+    return new Readiness(Kind.SCRIPT, -1, expression);
+  }
+
+  boolean waitsForNetwork() {
+    return kind == Kind.NETWORK_IDLE;
+  }
+
+  boolean waitsForDocument() {
+    return kind == Kind.DOM_CONTENT_LOADED;
+  }
+
+  boolean waitsForMainFrame() {
+    return kind == Kind.MAIN_DOCUMENT;
+  }
+
+  /**
+   * @return Idle time in milliseconds, or -1 to use {@link Settings#ajaxWait()}
+   */
+  long idleMS() {
+    return idleMS;
+  }
+
+  /**
+   * @return JavaScript expression, or null if this policy doesn't evaluate one
+   */
+  String script() {
+    return script;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder()
+        .append("kind=").append(kind)
+        .append(", idleMS=").append(idleMS)
+        .append(", script=").append(script)
+        .toString();
+  }
+}
@@ -18,121 +18,316 @@
 package com.machinepublishers.jbrowserdriver;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.SequenceInputStream;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
+import javax.net.ssl.SSLProtocolException;
+
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.ConnectionClosedException;
 
+/**
+ * Streams response bodies to WebKit, decompressing them on the fly. Only primary HTML documents are
+ * altered, and only within their first {@value #LOOKAHEAD} bytes, where the settings' script is injected.
+ */
 class ResponseHandler {
-  private static final Pattern head = Pattern.compile("<head\\b[^>]*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern html = Pattern.compile("<html\\b[^>]*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern body = Pattern.compile("<body\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+  private static final int LOOKAHEAD = 64 * 1024;
+  private static final int SCAN_STEP = 4 * 1024;
+  private static final int BUFFER = 8192;
   private static final Set<Integer> redirectCodes = Collections.unmodifiableSet(
       new HashSet<Integer>(Arrays.asList(new Integer[] { 301, 302, 303, 307, 308 })));
 
+  /**
+   * Ends the stream quietly when the server closes the connection early, as a fully buffered read would.
+   */
+  private static class Lenient extends FilterInputStream {
+    Lenient(InputStream in) {
+      super(in);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+      try {
+        return super.read();
+      } catch (EOFException | SSLProtocolException | ConnectionClosedException | SocketException e) {
+        return -1;
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      try {
+        return super.read(b, off, len);
+      } catch (EOFException | SSLProtocolException | ConnectionClosedException | SocketException e) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Writes a body to disk as it's read. If the disk write fails, the body is still read normally.
+   */
+  private static class ChannelTee extends FilterInputStream {
+    private final FileChannel channel;
+    private final File[] files;
+    private boolean failed;
+
+    /**
+     * @param files
+     *          Files deleted if the content can't be saved in full
+     */
+    ChannelTee(InputStream in, FileChannel channel, File... files) {
+      super(in);
+      this.channel = channel;
+      this.files = files;
+    }
+
+    private void tee(byte[] b, int off, int len) {
+      if (!failed && len > 0) {
+        try {
+          ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        } catch (Throwable t) {
+          failed = true;
+          Util.close(channel);
+          LogsServer.instance().exception(t);
+        }
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if (read != -1) {
+        tee(new byte[] { (byte) read }, 0, 1);
+      }
+      return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      tee(b, off, read);
+      return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+      //skipped bytes still need to be saved
+      byte[] buffer = new byte[(int) Math.min(n, BUFFER)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(read, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+      try {
+        //WebKit stops reading bodies it won't render, but the saved copy must be complete
+        byte[] buffer = new byte[BUFFER];
+        while (!failed && read(buffer, 0, buffer.length) != -1);
+      } catch (Throwable t) {
+        failed = true;
+        LogsServer.instance().exception(t);
+      } finally {
+        try {
+          super.close();
+        } finally {
+          Util.close(channel);
+          if (failed) {
+            for (File file : files) {
+              file.delete();
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases the connection once WebKit is done with the body.
+   */
+  private static class Body extends FilterInputStream {
+    private final StreamConnection conn;
+
+    Body(InputStream in, StreamConnection conn) {
+      super(in);
+      this.conn = conn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        Util.close(conn);
+      }
+    }
+  }
+
   static InputStream handleResponse(StreamConnection conn, InputStream inputStream) throws IOException {
     String url = conn.getURL().toExternalForm();
-    byte[] bytes = new byte[0];
+    InputStream content = null;
     try {
       if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
-        bytes = Util.toBytes(new GZIPInputStream(inputStream));
+        content = new Lenient(new GZIPInputStream(new Lenient(inputStream), BUFFER));
+        conn.setContentLengthUnknown();
       } else if ("deflate".equalsIgnoreCase(conn.getContentEncoding())) {
-        bytes = Util.toBytes(new InflaterInputStream(inputStream));
+        content = new Lenient(new InflaterInputStream(new Lenient(inputStream)));
+        conn.setContentLengthUnknown();
       } else {
-        bytes = Util.toBytes(inputStream);
+        content = new Lenient(inputStream);
       }
       conn.removeContentEncoding();
-      conn.setContentLength(bytes.length);
 
-      Settings settings = SettingsManager.settings();
+      Settings settings = conn.settings();
       if (settings != null) {
         String disposition = conn.getHeaderField("Content-Disposition");
 
         if (settings.saveAttachments() && disposition != null
-            && StatusMonitor.instance().isPrimaryDocument(true, url)) {
-          writeContentToDisk(bytes, StreamConnection.attachmentsDir(), url, conn.getContentTypeRaw(), disposition);
+            && conn.statusMonitor().isPrimaryDocument(true, url)) {
+          content = teeContentToDisk(content, StreamConnection.attachmentsDir(), url, conn.getContentTypeRaw(), disposition);
         }
 
         if (settings.saveMedia() && ((StreamConnection) conn).isMedia()) {
-          writeContentToDisk(bytes, StreamConnection.mediaDir(), url, conn.getContentTypeRaw(), disposition);
+          content = teeContentToDisk(content, StreamConnection.mediaDir(), url, conn.getContentTypeRaw(), disposition);
         }
-      }
-      byte[] newContent = getBody(conn, bytes, url);
-      if (newContent != null) {
-        bytes = newContent;
+        content = getBody(conn, content, url);
       }
     } catch (Throwable t) {
       LogsServer.instance().exception(t);
-    } finally {
-      Util.close(inputStream);
+      Util.close(content == null ? inputStream : content);
+      content = new ByteArrayInputStream(new byte[0]);
+      conn.setContentLength(0);
     }
-    conn.setContentLength(bytes.length);
-    return new ByteArrayInputStream(bytes);
+    return new Body(content, conn);
   }
 
-  private static void writeContentToDisk(byte[] content, File dir, String url, String contentType, String contentDisposition) {
+  /**
+   * Saves the body as it streams to WebKit, with a metadata sidecar written up front. The files are removed
+   * along with their directory when the process exits.
+   */
+  private static InputStream teeContentToDisk(InputStream content, File dir, String url, String contentType,
+      String contentDisposition) {
     String filename = Util.randomFileName();
 
     File contentFile = new File(dir, filename + ".content");
 
     File metaFile = new File(dir, filename + ".metadata");
 
-    contentFile.deleteOnExit();
-    metaFile.deleteOnExit();
-
-    try {
-      Files.write(contentFile.toPath(), content);
-      Files.write(metaFile.toPath(),
-          (new StringBuilder()
-              .append(StringUtils.isEmpty(url) ? "" : url).append("\n")
-              .append(StringUtils.isEmpty(contentType) ? "" : contentType).append("\n")
-              .append(StringUtils.isEmpty(contentDisposition) ? "" : contentDisposition)
-              .toString()).getBytes("utf-8"));
-    } catch (Throwable t) {}
+    FileChannel contentChannel = null;
+    try (FileChannel metaChannel = FileChannel.open(metaFile.toPath(),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      ByteBuffer meta = ByteBuffer.wrap((new StringBuilder()
+          .append(StringUtils.isEmpty(url) ? "" : url).append("\n")
+          .append(StringUtils.isEmpty(contentType) ? "" : contentType).append("\n")
+          .append(StringUtils.isEmpty(contentDisposition) ? "" : contentDisposition)
+          .toString()).getBytes("utf-8"));
+      while (meta.hasRemaining()) {
+        metaChannel.write(meta);
+      }
+      contentChannel = FileChannel.open(contentFile.toPath(),
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      return new ChannelTee(content, contentChannel, contentFile, metaFile);
+    } catch (Throwable t) {
+      Util.close(contentChannel);
+      LogsServer.instance().exception(t);
+      return content;
+    }
   }
 
-  private static byte[] getBody(StreamConnection connection, byte[] inflatedContent, String url) {
-    final Settings settings = SettingsManager.settings();
+  private static InputStream getBody(StreamConnection connection, InputStream content, String url) {
+    final Settings settings = connection.settings();
     try {
       if (settings.quickRender() && ((StreamConnection) connection).isMedia()) {
         LogsServer.instance().trace("Media discarded: " + url);
-        StatusMonitor.instance().addDiscarded(url);
-        return new byte[0];
+        connection.statusMonitor().addDiscarded(url);
+        //still saved to disk, if it's being saved, when closed
+        Util.close(content);
+        connection.setContentLength(0);
+        return new ByteArrayInputStream(new byte[0]);
       } else if (!redirectCodes.contains(connection.getResponseCode())
           && (connection.getContentType() == null || connection.getContentType().indexOf("text/html") > -1)
-          && StatusMonitor.instance().isPrimaryDocument(false, url)) {
-        String intercepted = null;
-        String charset = Util.charset(connection);
-        String content = new String(inflatedContent, charset);
-        Matcher matcher = head.matcher(content);
-        if (matcher.find()) {
-          intercepted = matcher.replaceFirst(matcher.group(0) + settings.script());
-        } else {
-          matcher = html.matcher(content);
-          if (matcher.find()) {
-            intercepted = matcher.replaceFirst(matcher.group(0) + "<head>" + settings.script() + "</head>");
-          } else {
-            matcher = body.matcher(content);
-            if (matcher.find()) {
-              intercepted = ("<html><head>" + settings.script() + "</head>" + content + "</html>");
-            } else {
-              intercepted = content;
-            }
-          }
-        }
-        return intercepted == null ? null : intercepted.getBytes(charset);
+          && connection.statusMonitor().isPrimaryDocument(false, url)) {
+        return injectScript(connection, content, settings.script());
       }
     } catch (Throwable t) {}
-    return null;
+    return content;
+  }
+
+  private static InputStream injectScript(StreamConnection connection, InputStream content, String script)
+      throws IOException {
+    final byte[] prologue = new byte[LOOKAHEAD];
+    final String charset = Util.charset(connection);
+    int len = 0;
+    boolean complete = false;
+    HtmlPrologue found = null;
+    for (int target = SCAN_STEP; found == null || !found.decided(); target = Math.min(target * 2, LOOKAHEAD)) {
+      for (int read; len < target; len += read) {
+        if ((read = content.read(prologue, len, target - len)) == -1) {
+          complete = true;
+          break;
+        }
+      }
+      found = HtmlPrologue.scan(prologue, len, charset, complete);
+      if (complete || len == LOOKAHEAD) {
+        break;
+      }
+    }
+    String before = "";
+    String after = "";
+    if (found.kind() == HtmlPrologue.HEAD) {
+      before = script;
+    } else if (found.kind() == HtmlPrologue.HTML) {
+      before = "<head>" + script + "</head>";
+    } else if (found.kind() == HtmlPrologue.BODY) {
+      before = "<html><head>" + script + "</head>";
+      after = "</html>";
+    }
+    if (found.kind() != HtmlPrologue.NONE) {
+      connection.setContentLengthUnknown();
+    }
+    return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+        new ByteArrayInputStream(prologue, 0, found.offset()),
+        new ByteArrayInputStream(before.getBytes(found.charset())),
+        new ByteArrayInputStream(prologue, found.offset(), len - found.offset()),
+        content,
+        new ByteArrayInputStream(after.getBytes(found.charset())))));
   }
 }
@@ -0,0 +1,134 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State belonging to one browser session within a child process. The primary
+ * session uses the process-wide settings, cookie store, and HTTP client, so a process
+ * hosting a single session behaves as before. Additional sessions each have their own.
+ * <p>
+ * {@link StreamConnection} finds the session of a request from the {@link StatusMonitor}
+ * of the window which made it. WebKit reads and writes cookies for scripts through the
+ * process-wide {@link CookieHandler} without saying which page is asking, so while a process
+ * hosts several sessions, those calls go to the one session with a window showing a document
+ * from the host, and are refused if there's none or more than one.
+ */
+class Session {
+  static final Session primary = new Session(null);
+  private static final CookieStore primaryCookieStore = new CookieStore();
+  private static final AtomicLong nextId = new AtomicLong();
+  private static final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+  final String id;
+  private final AtomicReference<Settings> settings = new AtomicReference<Settings>();
+  private final AtomicReference<StreamConnectionClient> client = new AtomicReference<StreamConnectionClient>();
+  private final CookieStore cookieStore;
+
+  private static class ScriptCookies extends CookieHandler {
+    @Override
+    public Map<String, List<String>> get(URI uri, Map<String, List<String>> requestHeaders) throws IOException {
+      Session session = fromScript(uri);
+      return session == null
+          ? Collections.<String, List<String>> emptyMap() : session.cookieStore().get(uri, requestHeaders);
+    }
+
+    @Override
+    public void put(URI uri, Map<String, List<String>> responseHeaders) throws IOException {
+      Session session = fromScript(uri);
+      if (session != null) {
+        session.cookieStore().put(uri, responseHeaders);
+      }
+    }
+  }
+
+  private Session(String id) {
+    this.id = id;
+    this.cookieStore = id == null ? null : new CookieStore();
+  }
+
+  /**
+   * @return Handler to install as WebKit's cookie handler, which keeps sessions' script cookies apart
+   */
+  static CookieHandler cookieHandler() {
+    return new ScriptCookies();
+  }
+
+  private static Session fromScript(URI uri) {
+    if (sessions.isEmpty()) {
+      return primary;
+    }
+    Set<Session> showing = StatusMonitor.sessionsShowing(uri.getHost());
+    return showing.size() == 1 ? showing.iterator().next() : null;
+  }
+
+  static Session create() {
+    Session session = new Session(Long.toString(nextId.incrementAndGet()));
+    sessions.put(session.id, session);
+    return session;
+  }
+
+  static boolean shared() {
+    return !sessions.isEmpty();
+  }
+
+  void register(Settings settings) {
+    if (this == primary) {
+      SettingsManager.register(settings);
+    } else {
+      this.settings.set(settings);
+      StreamConnectionClient prevClient = client.getAndSet(new StreamConnectionClient(settings, "session-" + id));
+      if (prevClient != null) {
+        prevClient.shutDown();
+      }
+    }
+  }
+
+  Settings settings() {
+    return this == primary ? SettingsManager.settings() : settings.get();
+  }
+
+  CookieStore cookieStore() {
+    return this == primary ? primaryCookieStore : cookieStore;
+  }
+
+  StreamConnectionClient client() {
+    return this == primary ? StreamConnection.client() : client.get();
+  }
+
+  void close() {
+    if (this != primary) {
+      sessions.remove(id);
+      cookieStore.clear();
+      StreamConnectionClient prevClient = client.getAndSet(null);
+      if (prevClient != null) {
+        prevClient.shutDown();
+      }
+    }
+  }
+}
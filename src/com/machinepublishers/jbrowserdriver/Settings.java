@@ -142,6 +142,10 @@ public class Settings implements Serializable {
     CACHE_DIR("jbd.cachedir"),
     CACHE_ENTRIES("jbd.cacheentries"),
     CACHE_ENTRY_SIZE("jbd.cacheentrysize"),
+    CACHE_MEMORY("jbd.cachememory"),
+    CACHE_DIR_SIZE("jbd.cachedirsize"),
+    CACHE_DIR_AGE("jbd.cachedirage"),
+    CACHE_DAEMON("jbd.cachedaemon"),
     HOSTNAME_VERIFICATION("jbd.hostnameverification"),
     JAVASCRIPT("jbd.javascript"),
     SOCKET_TIMEOUT_MS("jbd.sockettimeout"),
@@ -161,6 +165,15 @@ public class Settings implements Serializable {
     CSRF_REQUEST_TOKEN("jbd.csrfreqtoken"),
     CSRF_RESPONSE_TOKEN("jbd.csrfresptoken"),
     BLOCK_MEDIA("jbd.blockmedia"),
+    WARM_PROCESSES("jbd.warmprocesses"),
+    MAX_PROCESS_REUSE("jbd.maxprocessreuse"),
+    MAX_PROCESS_AGE("jbd.maxprocessage"),
+    PROCESS_QUEUE_TIMEOUT("jbd.processqueuetimeout"),
+    CLASSPATH_CACHE_DIR("jbd.classpathcachedir"),
+    CLASS_DATA_SHARING("jbd.classdatasharing"),
+    SESSIONS_PER_PROCESS("jbd.sessionsperprocess"),
+    FRAMED_TRANSPORT("jbd.framedtransport"),
+    AD_BLOCK_LISTS("jbd.adblocklists"),
     @Deprecated
     WIRE_CONSOLE("jbd.wireconsole"),
     @Deprecated
@@ -198,6 +211,10 @@ public class Settings implements Serializable {
     private File cacheDir;
     private int cacheEntries = 10 * 1000;
     private long cacheEntrySize = 1000 * 1000;
+    private long cacheMemory = 32 * 1000 * 1000;
+    private long cacheDirSize;
+    private long cacheDirAge;
+    private boolean cacheDaemon;
     private String portRanges;
     private int processes = 2 * Runtime.getRuntime().availableProcessors();
     private boolean headless = true;
@@ -228,6 +245,15 @@ public class Settings implements Serializable {
     private String csrfResponseToken;
     private InetAddress nicAddress;
     private boolean blockMedia;
+    private int warmProcesses;
+    private int maxProcessReuse;
+    private long maxProcessAge;
+    private long processQueueTimeout;
+    private File classpathCacheDir;
+    private File classDataSharing;
+    private int sessionsPerProcess = 1;
+    private boolean framedTransport;
+    private File[] adBlockLists;
 
     /**
      * Headers to be sent on each request.
@@ -471,6 +497,9 @@ public class Settings implements Serializable {
     /**
      * Directory where the web cache resides--this enables sharing a cache across instances and after JVM restarts.
      * <p>
+     * Additional sessions hosted by a process (see {@link Settings.Builder#sessionsPerProcess(int)}) each keep
+     * their cache in a subdirectory of it named <code>session-</code><i>n</i>.
+     * <p>
      * Defaults to <code>null</code> meaning a temp directory will be generated, available via {@link JBrowserDriver#cacheDir()}.
      *
      * <p><ul>
@@ -523,6 +552,91 @@ public class Settings implements Serializable {
       return this;
     }
 
+    /**
+     * Set the maximum combined size of cache entries held in memory, in front of the cache on disk.
+     * Entries used repeatedly are favored over ones used once. Zero disables the in-memory tier.
+     * Only applies when the cache is enabled.
+     * <p>
+     * Defaults to 32 MB.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.cachememory</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.cachememory</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param bytes
+     * @return this Builder
+     */
+    public Builder cacheMemory(long bytes) {
+      this.cacheMemory = bytes;
+      return this;
+    }
+
+    /**
+     * Set the approximate maximum size of the cache directory. When it grows past this size, the least
+     * recently used entries are evicted in the background. Processes sharing the directory coordinate
+     * so that only one of them compacts it at a time. Zero means no limit.
+     * <p>
+     * Defaults to 0.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.cachedirsize</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.cachedirsize</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param bytes
+     * @return this Builder
+     */
+    public Builder cacheDirSize(long bytes) {
+      this.cacheDirSize = bytes;
+      return this;
+    }
+
+    /**
+     * Set the maximum time a cache entry is kept in the cache directory since it was last used.
+     * Older entries are evicted in the background. Zero means no limit.
+     * <p>
+     * Defaults to 0.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.cachedirage</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.cachedirage</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param ms
+     * @return this Builder
+     */
+    public Builder cacheDirAge(long ms) {
+      this.cacheDirAge = ms;
+      return this;
+    }
+
+    /**
+     * Whether browser processes share one cache hosted by this process, reached over a loopback socket
+     * which only accepts connections presenting a random token given to the browsers,
+     * instead of each keeping its own. Entries are held in a single
+     * memory pool, and when several browsers miss the same entry at once, only one fetches it while the
+     * others wait to be served from the cache. Only applies when the cache is enabled.
+     * <p>
+     * Browsers share a cache when they have the same {@link Settings.Builder#cacheDir(File)},
+     * {@link Settings.Builder#cacheMemory(long)}, {@link Settings.Builder#cacheDirSize(long)} and
+     * {@link Settings.Builder#cacheDirAge(long)}.
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.cachedaemon</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.cachedaemon</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param cacheDaemon
+     * @return this Builder
+     */
+    public Builder cacheDaemon(boolean cacheDaemon) {
+      this.cacheDaemon = cacheDaemon;
+      return this;
+    }
+
     /**
      * @deprecated Will be removed in v2.0.0. Use Settings.Builder.processes(..) instead.
      */
@@ -757,6 +871,29 @@ public class Settings implements Serializable {
       return this;
     }
 
+    /**
+     * Additional lists of hosts to block when {@link Settings.Builder#blockAds(boolean)} is enabled.
+     * <p>
+     * Each file can list one host per line, use the hosts file format (e.g., <code>0.0.0.0 example.com</code>),
+     * or use EasyList-style host rules (e.g., <code>||example.com^</code>, and <code>@@||example.com^</code> for
+     * exceptions). Rules with options, paths, or wildcards are ignored. A host is blocked along with its subdomains,
+     * and the most specific matching rule wins.
+     * <p>
+     * By default only the hosts in ad-hosts.txt in the source tree are blocked.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.adblocklists</code> overrides this setting. The paths must be separated by the platform's path separator.</li>
+     * <li>{@link Capabilities} name <code>jbd.adblocklists</code> alternately configures this setting. The paths must be separated by the platform's path separator.</li>
+     * </ul><p>
+     *
+     * @param adBlockLists
+     * @return this Builder
+     */
+    public Builder adBlockLists(File... adBlockLists) {
+      this.adBlockLists = adBlockLists;
+      return this;
+    }
+
     /**
      * Exclude web page images and binary data from rendering.
      * <p>
@@ -1203,6 +1340,207 @@ public class Settings implements Serializable {
       return this;
     }
 
+    /**
+     * Number of idle child browser processes to keep launched ahead of time, so that
+     * constructing a {@link JBrowserDriver} hands off an already running process instead
+     * of waiting for a new JVM to start. The pool is refilled in the background as processes
+     * are taken. Idle, launching, and in-use processes together never exceed the number of processes
+     * allowed by {@link Settings.Builder#processes(int)}, and a driver waiting for a process is served
+     * before the pool: it takes a process freed by another driver, or else an idle process is ended to make room.
+     * <p>
+     * Pool statistics are available from {@link JBrowserDriver#processPoolStats()}.
+     * <p>
+     * Defaults to <code>0</code> (i.e., no processes are launched ahead of time).
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.warmprocesses</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.warmprocesses</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param warmProcesses
+     * @return this Builder
+     */
+    public Builder warmProcesses(int warmProcesses) {
+      this.warmProcesses = warmProcesses;
+      return this;
+    }
+
+    /**
+     * Number of times a child browser process may be handed to a new session after the
+     * session using it quits. Instead of ending the process, quitting clears its cookies,
+     * user data directory, saved files, logs, and windows and returns it to the pool used by
+     * {@link Settings.Builder#warmProcesses(int)}, so the next {@link JBrowserDriver} with
+     * equivalent settings starts in milliseconds rather than seconds.
+     * <p>
+     * Processes are still ended when they exceed this count or {@link Settings.Builder#maxProcessAge(long)},
+     * which bounds any memory leaked by WebKit.
+     * <p>
+     * Defaults to <code>0</code> (i.e., processes are ended when their session quits).
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.maxprocessreuse</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.maxprocessreuse</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param maxProcessReuse
+     * @return this Builder
+     */
+    public Builder maxProcessReuse(int maxProcessReuse) {
+      this.maxProcessReuse = maxProcessReuse;
+      return this;
+    }
+
+    /**
+     * Milliseconds after launch beyond which a child browser process is no longer reused
+     * by another session. Only applies when {@link Settings.Builder#maxProcessReuse(int)} is positive.
+     * <p>
+     * Defaults to <code>0</code> (i.e., no limit).
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.maxprocessage</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.maxprocessage</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param maxProcessAge
+     * @return this Builder
+     */
+    public Builder maxProcessAge(long maxProcessAge) {
+      this.maxProcessAge = maxProcessAge;
+      return this;
+    }
+
+    /**
+     * Milliseconds a new {@link JBrowserDriver} waits for a process to become available when the max number
+     * of processes (see {@link Settings.Builder#processes(int)}) are already running. Waiting drivers
+     * are served in the order they were constructed. When the timeout elapses,
+     * an {@link org.openqa.selenium.TimeoutException} is thrown.
+     * <p>
+     * Statistics for waiting drivers are available from {@link JBrowserDriver#processQueueStats()}.
+     * <p>
+     * Defaults to <code>0</code> (i.e., wait indefinitely).
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.processqueuetimeout</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.processqueuetimeout</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param processQueueTimeout
+     * @return this Builder
+     */
+    public Builder processQueueTimeout(long processQueueTimeout) {
+      this.processQueueTimeout = processQueueTimeout;
+      return this;
+    }
+
+    /**
+     * Directory where the classpath used to launch child browser processes is kept--this enables
+     * skipping the unpacking of nested jars after JVM restarts. Contents are keyed by a hash of the
+     * parent process's classpath, so a changed classpath is unpacked again rather than reused.
+     * Multiple JVMs can safely share the same directory.
+     * <p>
+     * Only the settings passed to the first {@link JBrowserDriver} in a JVM have any effect.
+     * Ignored when a custom classpath is passed via {@link Settings.Builder#javaOptions(String...)}.
+     * <p>
+     * Defaults to <code>null</code> meaning a temp directory will be generated and deleted on exit.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.classpathcachedir</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.classpathcachedir</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param classpathCacheDir
+     * @return this Builder
+     */
+    public Builder classpathCacheDir(File classpathCacheDir) {
+      this.classpathCacheDir = classpathCacheDir;
+      return this;
+    }
+
+    /**
+     * Application class data sharing (AppCDS) archive used by child browser processes, so that each
+     * process maps JavaFX, WebKit, Selenium, and other classes from the archive instead of loading them from scratch.
+     * <p>
+     * When the file doesn't exist yet, the first process launched acts as the training run: it records
+     * the classes loaded during its sessions and writes the archive when it ends. Processes launched after that
+     * use the archive. Requires the child JVM to be Java 13 or later. Because the archive is only valid for the
+     * classpath it was created with, combine this with {@link Settings.Builder#classpathCacheDir(File)}
+     * so the archive remains usable after JVM restarts.
+     * <p>
+     * Time taken for processes to become ready is available from {@link JBrowserDriver#processPoolStats()}.
+     * <p>
+     * Defaults to <code>null</code> (i.e., class data sharing is left to the JVM's defaults).
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.classdatasharing</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.classdatasharing</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param classDataSharing
+     *          archive file
+     * @return this Builder
+     */
+    public Builder classDataSharing(File classDataSharing) {
+      this.classDataSharing = classDataSharing;
+      return this;
+    }
+
+    /**
+     * Max number of {@link JBrowserDriver} sessions hosted by one child browser process. Each session
+     * has its own windows, settings, cookies, and HTTP connection pool, but all of them share
+     * the process's JVM and JavaFX runtime, so only the first session pays for launching it.
+     * A new driver joins a running process launched with equivalent settings when that
+     * process has room, otherwise a new process is launched. The process ends when its last session quits.
+     * <p>
+     * Sessions sharing a process aren't isolated from each other the way separate processes are: logs
+     * and other process-wide state are shared, and since WebKit doesn't say which page a script's cookie
+     * access comes from, scripts can only read and write cookies through <code>document.cookie</code> while
+     * no other session shows a document from the same host. Don't share processes among untrusted or
+     * unrelated users' sessions.
+     * <p>
+     * Calls made by sessions sharing a process are serialized. When this is greater than <code>1</code>,
+     * {@link Settings.Builder#warmProcesses(int)} and {@link Settings.Builder#maxProcessReuse(int)} are ignored.
+     * <p>
+     * Defaults to <code>1</code> (i.e., each session has its own process).
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.sessionsperprocess</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.sessionsperprocess</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param sessionsPerProcess
+     * @return this Builder
+     */
+    public Builder sessionsPerProcess(int sessionsPerProcess) {
+      this.sessionsPerProcess = sessionsPerProcess;
+      return this;
+    }
+
+    /**
+     * Whether calls to child browser processes use a compact binary protocol over one persistent connection
+     * instead of Java RMI. Calls are sent as length-prefixed frames tagged with request IDs, so calls from
+     * multiple threads are pipelined over the same connection rather than each opening a socket. Common
+     * values such as strings, numbers, and lists are encoded without Java serialization.
+     * <p>
+     * The child process listens for this connection on an ephemeral port of {@link Settings.Builder#host(String)},
+     * in addition to the ports given by {@link Settings.Builder#processes(String)}.
+     * <p>
+     * Call latency of either transport is available from {@link JBrowserDriver#transportStats(boolean)}.
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.framedtransport</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.framedtransport</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param framedTransport
+     * @return this Builder
+     */
+    public Builder framedTransport(boolean framedTransport) {
+      this.framedTransport = framedTransport;
+      return this;
+    }
+
     /**
      * @deprecated Will be removed in v2.0.0. Instead use Settings Builder's logWire, logsMax, or logger.
      */
@@ -1261,6 +1599,10 @@ public class Settings implements Serializable {
     public Capabilities buildCapabilities() {
       DesiredCapabilities capabilities = new DesiredCapabilities("jbrowserdriver", "", Platform.ANY);
       set(capabilities, PropertyName.CACHE_ENTRY_SIZE, this.cacheEntrySize);
+      set(capabilities, PropertyName.CACHE_MEMORY, this.cacheMemory);
+      set(capabilities, PropertyName.CACHE_DIR_SIZE, this.cacheDirSize);
+      set(capabilities, PropertyName.CACHE_DIR_AGE, this.cacheDirAge);
+      set(capabilities, PropertyName.CACHE_DAEMON, this.cacheDaemon);
       set(capabilities, PropertyName.CACHE_ENTRIES, this.cacheEntries);
       set(capabilities, PropertyName.CACHE, this.cache);
       set(capabilities, PropertyName.IGNORE_DIALOGS, this.ignoreDialogs);
@@ -1304,6 +1646,14 @@ public class Settings implements Serializable {
         set(capabilities, PropertyName.CACHE_DIR, this.cacheDir.getAbsolutePath());
       }
 
+      if (this.classpathCacheDir != null) {
+        set(capabilities, PropertyName.CLASSPATH_CACHE_DIR, this.classpathCacheDir.getAbsolutePath());
+      }
+
+      if (this.classDataSharing != null) {
+        set(capabilities, PropertyName.CLASS_DATA_SHARING, this.classDataSharing.getAbsolutePath());
+      }
+
       if (this.userDataDirectory != null) {
         capabilities.setCapability(PropertyName.USER_DATA_DIRECTORY.propertyName, this.userDataDirectory.getAbsolutePath());
       }
@@ -1329,6 +1679,19 @@ public class Settings implements Serializable {
         set(capabilities, PropertyName.PROXY_EXPECT_CONTINUE, proxy.expectContinue());
       }
       set(capabilities, PropertyName.BLOCK_MEDIA, this.blockMedia);
+      set(capabilities, PropertyName.WARM_PROCESSES, this.warmProcesses);
+      set(capabilities, PropertyName.MAX_PROCESS_REUSE, this.maxProcessReuse);
+      set(capabilities, PropertyName.MAX_PROCESS_AGE, this.maxProcessAge);
+      set(capabilities, PropertyName.PROCESS_QUEUE_TIMEOUT, this.processQueueTimeout);
+      set(capabilities, PropertyName.SESSIONS_PER_PROCESS, this.sessionsPerProcess);
+      set(capabilities, PropertyName.FRAMED_TRANSPORT, this.framedTransport);
+      if (this.adBlockLists != null) {
+        List<String> paths = new ArrayList<String>();
+        for (File list : this.adBlockLists) {
+          paths.add(list.getAbsolutePath());
+        }
+        set(capabilities, PropertyName.AD_BLOCK_LISTS, StringUtils.join(paths, File.pathSeparator));
+      }
 
       return capabilities;
     }
@@ -1487,6 +1850,10 @@ public class Settings implements Serializable {
   private final File cacheDir;
   private final int cacheEntries;
   private final long cacheEntrySize;
+  private final long cacheMemory;
+  private final long cacheDirSize;
+  private final long cacheDirAge;
+  private final boolean cacheDaemon;
   private final List<PortGroup> portGroups;
   private final boolean headless;
   private final long ajaxWait;
@@ -1518,6 +1885,15 @@ public class Settings implements Serializable {
   private final String csrfResponseToken;
   private final InetAddress nicAddress;
   private final boolean blockMedia;
+  private final int warmProcesses;
+  private final int maxProcessReuse;
+  private final long maxProcessAge;
+  private final long processQueueTimeout;
+  private final File classpathCacheDir;
+  private final File classDataSharing;
+  private final int sessionsPerProcess;
+  private final boolean framedTransport;
+  private final List<File> adBlockLists;
 
   private Settings(Settings.Builder builder, Map properties) {
     Settings.Builder defaults = Settings.builder();
@@ -1526,6 +1902,10 @@ public class Settings implements Serializable {
     this.screenWidth = parse(properties, PropertyName.SCREEN_WIDTH, screen.getWidth());
     this.screenHeight = parse(properties, PropertyName.SCREEN_HEIGHT, screen.getHeight());
     this.cacheEntrySize = parse(properties, PropertyName.CACHE_ENTRY_SIZE, builder.cacheEntrySize);
+    this.cacheMemory = parse(properties, PropertyName.CACHE_MEMORY, builder.cacheMemory);
+    this.cacheDirSize = parse(properties, PropertyName.CACHE_DIR_SIZE, builder.cacheDirSize);
+    this.cacheDirAge = parse(properties, PropertyName.CACHE_DIR_AGE, builder.cacheDirAge);
+    this.cacheDaemon = parse(properties, PropertyName.CACHE_DAEMON, builder.cacheDaemon);
     this.cacheEntries = parse(properties, PropertyName.CACHE_ENTRIES, builder.cacheEntries);
     this.cache = parse(properties, PropertyName.CACHE, builder.cache);
     this.ignoreDialogs = parse(properties, PropertyName.IGNORE_DIALOGS, builder.ignoreDialogs);
@@ -1707,6 +2087,25 @@ public class Settings implements Serializable {
     scriptBuilder.append("</script>");
     this.script = scriptBuilder.toString();
     this.blockMedia = parse(properties, PropertyName.BLOCK_MEDIA, builder.blockMedia);
+    this.warmProcesses = parse(properties, PropertyName.WARM_PROCESSES, builder.warmProcesses);
+    this.maxProcessReuse = parse(properties, PropertyName.MAX_PROCESS_REUSE, builder.maxProcessReuse);
+    this.maxProcessAge = parse(properties, PropertyName.MAX_PROCESS_AGE, builder.maxProcessAge);
+    this.processQueueTimeout = parse(properties, PropertyName.PROCESS_QUEUE_TIMEOUT, builder.processQueueTimeout);
+    this.classpathCacheDir = parse(properties, PropertyName.CLASSPATH_CACHE_DIR, builder.classpathCacheDir);
+    this.classDataSharing = parse(properties, PropertyName.CLASS_DATA_SHARING, builder.classDataSharing);
+    this.sessionsPerProcess = parse(properties, PropertyName.SESSIONS_PER_PROCESS, builder.sessionsPerProcess);
+    this.framedTransport = parse(properties, PropertyName.FRAMED_TRANSPORT, builder.framedTransport);
+    List<File> adBlockListsTmp = new ArrayList<File>();
+    if (properties.get(PropertyName.AD_BLOCK_LISTS.propertyName) != null) {
+      for (String path : properties.get(PropertyName.AD_BLOCK_LISTS.propertyName).toString().split(File.pathSeparator)) {
+        if (!path.isEmpty()) {
+          adBlockListsTmp.add(new File(path));
+        }
+      }
+    } else if (builder.adBlockLists != null) {
+      adBlockListsTmp.addAll(Arrays.asList(builder.adBlockLists));
+    }
+    this.adBlockLists = Collections.unmodifiableList(adBlockListsTmp);
   }
 
   RequestHeaders headers() {
@@ -1765,6 +2164,22 @@ public class Settings implements Serializable {
     return cacheEntrySize;
   }
 
+  long cacheMemory() {
+    return cacheMemory;
+  }
+
+  long cacheDirSize() {
+    return cacheDirSize;
+  }
+
+  long cacheDirAge() {
+    return cacheDirAge;
+  }
+
+  boolean cacheDaemon() {
+    return cacheDaemon;
+  }
+
   List<PortGroup> portGroups() {
     return portGroups;
   }
@@ -1888,4 +2303,40 @@ public class Settings implements Serializable {
   boolean blockMedia() {
     return blockMedia;
   }
+
+  int warmProcesses() {
+    return warmProcesses;
+  }
+
+  int maxProcessReuse() {
+    return maxProcessReuse;
+  }
+
+  long maxProcessAge() {
+    return maxProcessAge;
+  }
+
+  long processQueueTimeout() {
+    return processQueueTimeout;
+  }
+
+  File classpathCacheDir() {
+    return classpathCacheDir;
+  }
+
+  File classDataSharing() {
+    return classDataSharing;
+  }
+
+  int sessionsPerProcess() {
+    return sessionsPerProcess;
+  }
+
+  boolean framedTransport() {
+    return framedTransport;
+  }
+
+  List<File> adBlockLists() {
+    return adBlockLists;
+  }
 }
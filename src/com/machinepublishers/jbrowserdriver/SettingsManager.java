@@ -87,17 +87,18 @@ class SettingsManager {
 
   @SuppressWarnings("deprecation") //App class is for internal use only; it's not actually deprecated
   static void register(
+      final Settings settings,
       final AtomicReference<Stage> stage,
       final AtomicReference<WebView> view) {
-    ProxyAuth.add(settings.get().proxy());
+    ProxyAuth.add(settings.proxy());
     if (isMonocle() &&
         com.sun.glass.ui.Application.GetApplication() == null) {
       new Thread(() -> {
         try {
           Application.launch(App.class,
               new String[] {
-                  Integer.toString(settings.get().screenWidth()),
-                  Integer.toString(settings.get().screenHeight()),
+                  Integer.toString(settings.screenWidth()),
+                  Integer.toString(settings.screenHeight()),
                   Boolean.toString(isMonocle()) });
         } catch (Throwable t) {
           LogsServer.instance().exception(t);
@@ -106,7 +107,7 @@ class SettingsManager {
     } else {
       final App app = new App();
       app.init(
-          settings.get().screenWidth(), settings.get().screenHeight(),
+          settings.screenWidth(), settings.screenHeight(),
           isMonocle());
       AppThread.exec(() -> {
         try {
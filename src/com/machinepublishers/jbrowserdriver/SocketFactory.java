@@ -17,7 +17,11 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -37,6 +41,51 @@ class SocketFactory extends RMISocketFactory implements Serializable {
   private transient final AtomicReference<Socket> clientSocket = new AtomicReference<Socket>(new Socket());
   private transient final AtomicReference<Socket> clientAltSocket = new AtomicReference<Socket>(new Socket());
 
+  /**
+   * Counts bytes of RMI calls in {@link TransportStats#RMI}.
+   */
+  private static class CountingSocket extends Socket {
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return new FilterInputStream(super.getInputStream()) {
+        @Override
+        public int read() throws IOException {
+          int read = super.read();
+          if (read != -1) {
+            TransportStats.RMI.received(1);
+          }
+          return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          int read = super.read(b, off, len);
+          if (read > 0) {
+            TransportStats.RMI.received(read);
+          }
+          return read;
+        }
+      };
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+      return new FilterOutputStream(super.getOutputStream()) {
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+          TransportStats.RMI.sent(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+          TransportStats.RMI.sent(len);
+        }
+      };
+    }
+  }
+
   SocketFactory(String host, PortGroup ports, final Set<SocketLock> locks) {
     InetAddress hostTmp = null;
     try {
@@ -98,7 +147,7 @@ class SocketFactory extends RMISocketFactory implements Serializable {
         if (!background) {
           Util.close(socket.get());
         }
-        socket.set(new Socket());
+        socket.set(new CountingSocket());
         socket.get().setReuseAddress(true);
         socket.get().setTcpNoDelay(true);
         socket.get().setKeepAlive(true);
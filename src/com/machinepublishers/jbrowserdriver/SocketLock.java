@@ -22,11 +22,24 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 class SocketLock implements Serializable {
   final AtomicBoolean expired = new AtomicBoolean();
+  private final SocketLock process;
+
+  SocketLock() {
+    this.process = null;
+  }
+
+  /**
+   * Lock for one of several sessions sharing a process. It expires independently,
+   * but validating it yields the process's lock so calls from all of the sessions are serialized.
+   */
+  SocketLock(SocketLock process) {
+    this.process = process;
+  }
 
   SocketLock validated() {
     if (expired.get()) {
       throw new IllegalStateException("Operation attempted, but browser already quit.");
     }
-    return this;
+    return process == null ? this : process.validated();
   }
 }
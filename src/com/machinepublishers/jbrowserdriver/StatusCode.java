@@ -17,17 +17,49 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 class StatusCode {
   private final AtomicInteger statusCode = new AtomicInteger(-1);
+  private final List<Runnable> parked = new ArrayList<Runnable>();
 
   void reset() {
-    statusCode.set(-1);
+    set(-1);
   }
 
   void set(int statusCode) {
-    this.statusCode.set(statusCode);
+    synchronized (this) {
+      this.statusCode.set(statusCode);
+      if (statusCode != 0 && !parked.isEmpty()) {
+        for (Runnable runnable : parked) {
+          runnable.run();
+        }
+        parked.clear();
+      }
+    }
+  }
+
+  /**
+   * Holds an action until the status code is no longer zero, i.e., until the pending page load completes.
+   * 
+   * @return Whether the action was parked. If not, the page isn't loading and the caller should proceed.
+   */
+  boolean park(Runnable onRelease) {
+    synchronized (this) {
+      if (statusCode.get() == 0) {
+        parked.add(onRelease);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  void unpark(Runnable onRelease) {
+    synchronized (this) {
+      parked.remove(onRelease);
+    }
   }
 
   int get() {
@@ -17,30 +17,170 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.net.URI;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Tracks connections, redirects, and primary documents for one window. Requests made by WebKit don't
+ * identify the page that made them, but WebKit reports each load to the window's listener before
+ * requesting it, so the window records that it expects the URL and {@link StreamConnection} claims the
+ * expectation when it opens. A redirect is followed on the same loader thread, so it goes to the window
+ * which got the redirect. Other requests are tracked by a detached monitor.
+ */
 class StatusMonitor {
-  private static final StatusMonitor instance = new StatusMonitor();
-  private final Object lock = new Object();
-  private final Map<String, StreamConnection> connections = new HashMap<String, StreamConnection>();
-  private final Map<String, Boolean> primaryDocuments = new HashMap<String, Boolean>();
-  private final Set<String> discarded = new HashSet<String>();
-  private final Map<String, String> redirects = new HashMap<String, String>();
-  private final List<String> startedUrls = new ArrayList<String>();
+  private static final Map<String, StatusMonitor> monitors = new ConcurrentHashMap<String, StatusMonitor>();
+  private static final Map<String, Deque<StatusMonitor>> expected = new ConcurrentHashMap<String, Deque<StatusMonitor>>();
+  private static final ThreadLocal<StatusMonitor> claimed = new ThreadLocal<StatusMonitor>();
+  private static final StatusMonitor detached = new StatusMonitor(null);
+  private final String id;
+  private final AtomicReference<Session> session = new AtomicReference<Session>(Session.primary);
+  private final Map<String, Integer> requested = new ConcurrentHashMap<String, Integer>();
+  private final Set<String> documentHosts = ConcurrentHashMap.newKeySet();
+  private final Map<String, StreamConnection> connections = new ConcurrentHashMap<String, StreamConnection>();
+  private final Map<String, Boolean> primaryDocuments = new ConcurrentHashMap<String, Boolean>();
+  private final Set<String> discarded = ConcurrentHashMap.newKeySet();
+  private final Map<String, String> redirects = new ConcurrentHashMap<String, String>();
+  private final ConcurrentLinkedDeque<String> startedUrls = new ConcurrentLinkedDeque<String>();
+
+  private StatusMonitor(String id) {
+    this.id = id;
+  }
+
+  static StatusMonitor register(String windowId) {
+    StatusMonitor monitor = new StatusMonitor(windowId);
+    monitors.put(windowId, monitor);
+    return monitor;
+  }
+
+  static StatusMonitor detached() {
+    return detached;
+  }
+
+  /**
+   * @return The monitor of the window which expects a request for the URL, or which got a redirect to it
+   *         on this thread, or else the detached monitor.
+   */
+  static StatusMonitor fromRequest(String url) {
+    final StatusMonitor[] monitor = new StatusMonitor[1];
+    expected.computeIfPresent(canonicalUrl(url), (k, cur) -> {
+      monitor[0] = cur.pollFirst();
+      return cur.isEmpty() ? null : cur;
+    });
+    if (monitor[0] == null) {
+      StatusMonitor prev = claimed.get();
+      if (prev != null && monitors.get(prev.id) == prev && prev.originalFromRedirect(url) != null) {
+        monitor[0] = prev;
+      }
+    }
+    if (monitor[0] == null) {
+      return detached;
+    }
+    claimed.set(monitor[0]);
+    monitor[0].requested.merge(canonicalUrl(url), 1, Integer::sum);
+    return monitor[0];
+  }
+
+  /**
+   * @return Sessions with a window showing a document from the host
+   */
+  static Set<Session> sessionsShowing(String host) {
+    Set<Session> sessions = new HashSet<Session>();
+    if (host != null) {
+      host = host.toLowerCase();
+      for (StatusMonitor monitor : monitors.values()) {
+        if (monitor.documentHosts.contains(host)) {
+          sessions.add(monitor.session());
+        }
+      }
+    }
+    return sessions;
+  }
+
+  Session session() {
+    return session.get();
+  }
+
+  /**
+   * Records the host of a document this window is showing. A new main frame document replaces the others.
+   */
+  void addDocument(boolean mainFrame, String url) {
+    if (mainFrame) {
+      documentHosts.clear();
+    }
+    try {
+      String host = url == null ? null : new URI(url).getHost();
+      if (host != null) {
+        documentHosts.add(host.toLowerCase());
+      }
+    } catch (Throwable t) {}
+  }
 
-  static StatusMonitor instance() {
-    return instance;
+  void session(Session session) {
+    this.session.set(session);
+  }
+
+  /**
+   * Records that this window's web engine is about to request the URL.
+   */
+  void expect(String url) {
+    if (this != detached && url != null && (url.startsWith("http://") || url.startsWith("https://"))) {
+      expected.compute(canonicalUrl(url), (k, cur) -> {
+        cur = cur == null ? new ArrayDeque<StatusMonitor>() : cur;
+        cur.addLast(this);
+        return cur;
+      });
+    }
+  }
+
+  /**
+   * Records that a load of the URL is done. If no request was made for it, e.g., because it was
+   * served from WebKit's own cache, its expectation is dropped.
+   */
+  void loaded(String url) {
+    if (this != detached && url != null) {
+      final String canonical = canonicalUrl(url);
+      final boolean[] wasRequested = new boolean[1];
+      requested.computeIfPresent(canonical, (k, count) -> {
+        wasRequested[0] = true;
+        return count > 1 ? count - 1 : null;
+      });
+      if (!wasRequested[0]) {
+        expected.computeIfPresent(canonical, (k, cur) -> {
+          cur.removeFirstOccurrence(this);
+          return cur.isEmpty() ? null : cur;
+        });
+      }
+    }
+  }
+
+  void unregister() {
+    if (this != detached) {
+      monitors.remove(id);
+      for (String url : expected.keySet()) {
+        expected.computeIfPresent(url, (k, cur) -> {
+          cur.removeIf(monitor -> monitor == this);
+          return cur.isEmpty() ? null : cur;
+        });
+      }
+      requested.clear();
+      documentHosts.clear();
+    }
+    clear();
   }
 
   private static String canonicalUrl(String url) {
     if (url == null) {
-      return null;
+      //concurrent maps don't allow null keys
+      return "";
     }
     int fragmentIndex = url.indexOf("#");
     url = fragmentIndex > -1 ? url.substring(0, fragmentIndex) : url;
@@ -48,68 +188,48 @@ class StatusMonitor {
   }
 
   boolean isPrimaryDocument(boolean requireMainFrame, String url) {
-    synchronized (lock) {
-      String canonicalUrl = canonicalUrl(url);
-      return primaryDocuments.containsKey(canonicalUrl)
-          && (!requireMainFrame || primaryDocuments.get(canonicalUrl));
-    }
+    Boolean mainFrame = primaryDocuments.get(canonicalUrl(url));
+    return mainFrame != null && (!requireMainFrame || mainFrame);
   }
 
   boolean isDiscarded(String url) {
-    synchronized (lock) {
-      return discarded.contains(canonicalUrl(url));
-    }
+    return discarded.contains(canonicalUrl(url));
   }
 
   void addRedirect(String original, String redirected) {
     String canonicalOriginal = canonicalUrl(original);
     String canonicalRedirected = canonicalUrl(redirected);
-    if (canonicalOriginal != null
-        && canonicalRedirected != null
+    if (original != null
+        && redirected != null
         && !canonicalOriginal.equals(canonicalRedirected)) {
-      synchronized (lock) {
-        redirects.put(canonicalRedirected, original);
-      }
+      redirects.put(canonicalRedirected, original);
     }
   }
 
   String originalFromRedirect(String redirected) {
-    synchronized (lock) {
-      return redirects.get(canonicalUrl(redirected));
-    }
+    return redirects.get(canonicalUrl(redirected));
   }
 
   void monitor(String url) {
-    synchronized (lock) {
-      startedUrls.add(canonicalUrl(url));
-    }
+    startedUrls.add(canonicalUrl(url));
   }
 
   void addPrimaryDocument(boolean mainFrame, String url) {
-    synchronized (lock) {
-      primaryDocuments.put(canonicalUrl(url), mainFrame);
-    }
+    primaryDocuments.put(canonicalUrl(url), mainFrame);
   }
 
   void monitor(URL url, StreamConnection conn) {
-    synchronized (lock) {
-      connections.put(canonicalUrl(url.toExternalForm()), conn);
-    }
+    connections.put(canonicalUrl(url.toExternalForm()), conn);
   }
 
   void addDiscarded(String url) {
-    synchronized (lock) {
-      discarded.add(canonicalUrl(url));
-    }
+    discarded.add(canonicalUrl(url));
   }
 
   int status(String url) {
-    StreamConnection conn = null;
-    synchronized (lock) {
-      conn = connections.get(canonicalUrl(url));
-      for (int i = startedUrls.size() - 1; conn == null && i > -1; i--) {
-        conn = connections.get(startedUrls.get(i));
-      }
+    StreamConnection conn = connections.get(canonicalUrl(url));
+    for (Iterator<String> started = startedUrls.descendingIterator(); conn == null && started.hasNext();) {
+      conn = connections.get(started.next());
     }
     int code = 499;
     if (conn != null) {
@@ -124,16 +244,14 @@ class StatusMonitor {
   }
 
   void clear() {
-    synchronized (lock) {
-      for (StreamConnection conn : connections.values()) {
-        Util.close(conn);
-      }
-      StreamConnection.cleanUp();
-      connections.clear();
-      primaryDocuments.clear();
-      discarded.clear();
-      redirects.clear();
-      startedUrls.clear();
+    for (Iterator<StreamConnection> it = connections.values().iterator(); it.hasNext();) {
+      Util.close(it.next());
+      it.remove();
     }
+    StreamConnection.cleanUp();
+    primaryDocuments.clear();
+    discarded.clear();
+    redirects.clear();
+    startedUrls.clear();
   }
 }
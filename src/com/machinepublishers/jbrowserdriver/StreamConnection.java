@@ -17,14 +17,12 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
@@ -51,6 +49,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -71,10 +70,8 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.util.EntityUtils;
 
-import com.sun.webkit.network.CookieManager;
 
 class StreamConnection extends HttpURLConnection implements Closeable {
-  private static final CookieStore cookieStore = (CookieStore) CookieManager.getDefault();
   private static final File attachmentsDir;
   private static final File mediaDir;
   static {
@@ -83,8 +80,8 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     try {
       attachmentsDirTmp = Files.createTempDirectory("jbd_attachments_").toFile();
       mediaDirTmp = Files.createTempDirectory("jbd_media_").toFile();
-      attachmentsDirTmp.deleteOnExit();
-      mediaDirTmp.deleteOnExit();
+      Runtime.getRuntime().addShutdownHook(new FileRemover(attachmentsDirTmp));
+      Runtime.getRuntime().addShutdownHook(new FileRemover(mediaDirTmp));
     } catch (Throwable t) {
       Util.handleException(t);
     }
@@ -94,7 +91,6 @@ class StreamConnection extends HttpURLConnection implements Closeable {
   private static final Set<String> ignoredHeaders = Collections.unmodifiableSet(new HashSet(Arrays.asList(new String[] {
       "cookie", "pragma", "cache-control", "content-length" })));
   private static final Pattern invalidUrlChar = Pattern.compile("[^-A-Za-z0-9._~:/?#\\[\\]@!$&'()*+,;=]");
-  private static final Set<String> adHosts = new HashSet<String>();
   private static final AtomicReference<StreamConnectionClient> client = new AtomicReference<StreamConnectionClient>();
   private static final Set<String> mediaExtensions = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] {
       ".svg", ".gif", ".jpeg", ".jpg", ".png",
@@ -120,22 +116,15 @@ class StreamConnection extends HttpURLConnection implements Closeable {
   private final AtomicReference<HttpRequestBase> req = new AtomicReference<HttpRequestBase>();
   private final AtomicBoolean contentEncodingRemoved = new AtomicBoolean();
   private final AtomicLong contentLength = new AtomicLong(-1);
+  private final AtomicBoolean contentLengthUnknown = new AtomicBoolean();
   private final AtomicReference<ByteArrayOutputStream> reqData = new AtomicReference<ByteArrayOutputStream>(new ByteArrayOutputStream());
+  private final AtomicReference<Session> session = new AtomicReference<Session>(Session.primary);
+  private final AtomicReference<StatusMonitor> statusMonitor = new AtomicReference<StatusMonitor>(StatusMonitor.detached());
 
   static {
     if (SettingsManager.settings().blockAds()) {
-      BufferedReader reader = null;
-      try {
-        reader = new BufferedReader(
-            new InputStreamReader(StreamConnection.class.getResourceAsStream("/com/machinepublishers/jbrowserdriver/ad-hosts.txt")));
-        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-          adHosts.add(line);
-        }
-      } catch (Throwable t) {
-        LogsServer.instance().exception(t);
-      } finally {
-        Util.close(reader);
-      }
+      //load the lists up front rather than on the first request
+      HostMatcher.adBlocker(SettingsManager.settings().adBlockLists());
     }
   }
 
@@ -144,7 +133,19 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     if (prevClient != null) {
       prevClient.shutDown();
     }
-    client.set(new StreamConnectionClient());
+    client.set(new StreamConnectionClient(SettingsManager.settings(), null));
+  }
+
+  static StreamConnectionClient client() {
+    return client.get();
+  }
+
+  Settings settings() {
+    return session.get().settings();
+  }
+
+  StatusMonitor statusMonitor() {
+    return statusMonitor.get();
   }
 
   static File cacheDir() {
@@ -159,18 +160,22 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     return mediaDir;
   }
 
-  private boolean isBlocked(String host) {
-    if (SettingsManager.settings().blockAds() && !adHosts.isEmpty()) {
-      host = host.toLowerCase();
-      while (host.contains(".")) {
-        if (adHosts.contains(host)) {
-          LogsServer.instance().trace("Ad blocked: " + host);
-          host = null;
-          return true;
+  static void clearSavedFiles() {
+    for (File dir : new File[] { attachmentsDir, mediaDir }) {
+      File[] files = dir == null ? null : dir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          FileUtils.deleteQuietly(file);
         }
-        host = host.substring(host.indexOf('.') + 1);
       }
-      host = null;
+    }
+  }
+
+  private boolean isBlocked(String host) {
+    Settings settings = settings();
+    if (settings.blockAds() && HostMatcher.adBlocker(settings.adBlockLists()).matches(host)) {
+      LogsServer.instance().trace("Ad blocked: " + host);
+      return true;
     }
     return false;
   }
@@ -188,6 +193,10 @@ class StreamConnection extends HttpURLConnection implements Closeable {
             || contentType.contains("/font-"))) {
       return true;
     }
+    return hasMediaExtension();
+  }
+
+  private boolean hasMediaExtension() {
     String path = url.getPath() == null ? null : url.getPath().toLowerCase();
     if (path != null) {
       for (String extension : mediaExtensions) {
@@ -199,11 +208,49 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     return false;
   }
 
+  /**
+   * Predicts whether a request is for media before it's sent, from the URL and the Accept header,
+   * which WebKit sets according to the type of resource it's loading.
+   */
+  private boolean isMediaRequest() {
+    List<String> accept = reqHeaders.get("accept");
+    if (accept != null && !accept.isEmpty()) {
+      String value = accept.get(0).toLowerCase();
+      if (value.startsWith("image/")
+          || value.startsWith("video/")
+          || value.startsWith("audio/")
+          || value.startsWith("font/")) {
+        return true;
+      }
+    }
+    return hasMediaExtension();
+  }
+
+  /**
+   * @return Whether media is never passed to WebKit, so it needn't be downloaded
+   */
+  private static boolean skipsMedia(Settings settings) {
+    return settings.blockMedia() || (settings.quickRender() && !settings.saveMedia());
+  }
+
+  /**
+   * @return Whether this could be an attachment to save, which needs its body even if it counts as media.
+   *         Once the response arrives, it must also have a Content-Disposition header.
+   */
+  private boolean savesAttachment(Settings settings) {
+    return settings.saveAttachments()
+        && statusMonitor.get().isPrimaryDocument(true, urlString)
+        && (response.get() == null || response.get().getFirstHeader("Content-Disposition") != null);
+  }
+
   StreamConnection(URL url) throws MalformedURLException {
     super(url);
     this.url = new URL(url.getProtocol(), url.getHost(), url.getPort(), url.getFile());
     this.urlString = url.toExternalForm();
     this.urlFragment = url.getRef();
+    //opened on the thread which loads the URL, right after the window which requested it expects it
+    this.statusMonitor.set(StatusMonitor.fromRequest(urlString));
+    this.session.set(statusMonitor.get().session());
   }
 
   private String hostHeader() {
@@ -243,7 +290,7 @@ class StreamConnection extends HttpURLConnection implements Closeable {
         }
       }
     }
-    cookieStore.addCsrfHeaders(settings, req);
+    session.get().cookieStore().addCsrfHeaders(settings, req);
   }
 
   ///////////////////////////////////////////////////////////
@@ -257,21 +304,23 @@ class StreamConnection extends HttpURLConnection implements Closeable {
   public void connect() throws IOException {
     try {
       if (connected.compareAndSet(false, true)) {
-        if (StatusMonitor.instance().isDiscarded(urlString)) {
+        if (statusMonitor.get().isDiscarded(urlString)) {
           skip.set(true);
           LogsServer.instance().trace("Media skipped: " + urlString);
         } else if (isBlocked(url.getHost())) {
           skip.set(true);
-        } else if (SettingsManager.settings() != null) {
-          if (SettingsManager.settings().blockMedia() && isMedia()) {
+        } else if (settings() != null) {
+          Settings settings = settings();
+          if (skipsMedia(settings) && isMediaRequest() && !savesAttachment(settings)) {
             skip.set(true);
+            LogsServer.instance().trace("Media skipped: " + urlString);
           } else {
             config.get()
                 .setCookieSpec("custom")
-                .setSocketTimeout(SettingsManager.settings().socketTimeout())
-                .setConnectTimeout(SettingsManager.settings().connectTimeout())
-                .setConnectionRequestTimeout(SettingsManager.settings().connectionReqTimeout())
-                .setLocalAddress(SettingsManager.settings().getLocalIp());
+                .setSocketTimeout(settings.socketTimeout())
+                .setConnectTimeout(settings.connectTimeout())
+                .setConnectionRequestTimeout(settings.connectionReqTimeout())
+                .setLocalAddress(settings.getLocalIp());
             URI uri = null;
             try {
               uri = url.toURI();
@@ -300,8 +349,8 @@ class StreamConnection extends HttpURLConnection implements Closeable {
             } else if ("PATCH".equals(method.get())) {
               req.set(new HttpPatch(uri));
             }
-            processHeaders(SettingsManager.settings(), req.get());
-            ProxyConfig proxy = SettingsManager.settings().proxy();
+            processHeaders(settings, req.get());
+            ProxyConfig proxy = settings.proxy();
             if (proxy != null && !proxy.directConnection() && !proxy.nonProxyHosts().contains(uri.getHost())) {
               config.get().setExpectContinueEnabled(proxy.expectContinue());
               InetSocketAddress proxyAddress = new InetSocketAddress(proxy.host(), proxy.port());
@@ -311,9 +360,9 @@ class StreamConnection extends HttpURLConnection implements Closeable {
                 config.get().setProxy(new HttpHost(proxy.host(), proxy.port()));
               }
             }
-            context.get().setCookieStore(cookieStore);
+            context.get().setCookieStore(session.get().cookieStore());
             context.get().setRequestConfig(config.get().build());
-            StatusMonitor.instance().monitor(url, this);
+            statusMonitor.get().monitor(url, this);
           }
         }
       }
@@ -334,10 +383,19 @@ class StreamConnection extends HttpURLConnection implements Closeable {
           } else if ("PATCH".equals(method.get())) {
             ((HttpPatch) req.get()).setEntity(new ByteArrayEntity(reqData.get().toByteArray()));
           }
-          response.set(client.get().execute(req.get(), context.get()));
+          response.set(session.get().client().execute(req.get(), context.get()));
           if (response.get() != null && response.get().getEntity() != null) {
             entity.set(response.get().getEntity());
             response.get().setHeader("Cache-Control", "no-store, no-cache");
+            Settings settings = settings();
+            if (settings != null && skipsMedia(settings) && isMedia() && !savesAttachment(settings)) {
+              //identified by content type only, so drop the connection instead of downloading the body
+              req.get().abort();
+              entity.set(null);
+              skip.set(true);
+              statusMonitor.get().addDiscarded(urlString);
+              LogsServer.instance().trace("Media aborted: " + urlString);
+            }
           }
           if (this.urlFragment != null && response.get() != null) {
             Header header = response.get().getFirstHeader("Location");
@@ -404,13 +462,19 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     exec();
     if (consumed.compareAndSet(false, true)) {
       if (entity.get() != null) {
+        boolean streaming = false;
         try {
           InputStream entityStream = entity.get().getContent();
           if (entityStream != null && !skip.get()) {
-            return ResponseHandler.handleResponse(this, entityStream);
+            //the connection is closed along with the returned stream
+            InputStream body = ResponseHandler.handleResponse(this, entityStream);
+            streaming = true;
+            return body;
           }
         } finally {
-          close();
+          if (!streaming) {
+            close();
+          }
         }
       }
     }
@@ -450,7 +514,7 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     try {
       String location = getHeaderField("Location");
       if (!StringUtils.isEmpty(location)) {
-        StatusMonitor.instance().addRedirect(urlString, new URL(url, location).toExternalForm());
+        statusMonitor.get().addRedirect(urlString, new URL(url, location).toExternalForm());
       }
     } catch (Throwable t) {
       //ignore
@@ -502,6 +566,9 @@ class StreamConnection extends HttpURLConnection implements Closeable {
    */
   @Override
   public int getContentLength() {
+    if (contentLengthUnknown.get()) {
+      return -1;
+    }
     if (contentLength.get() != -1) {
       return (int) contentLength.get();
     }
@@ -513,6 +580,9 @@ class StreamConnection extends HttpURLConnection implements Closeable {
    */
   @Override
   public long getContentLengthLong() {
+    if (contentLengthUnknown.get()) {
+      return -1;
+    }
     if (contentLength.get() != -1) {
       return contentLength.get();
     }
@@ -520,10 +590,19 @@ class StreamConnection extends HttpURLConnection implements Closeable {
   }
 
   public void setContentLength(long contentLength) {
+    this.contentLengthUnknown.set(false);
     this.contentLength.set(contentLength);
     response.get().setHeader("Content-Length", Long.toString(contentLength));
   }
 
+  /**
+   * For bodies which are altered while they're streamed, so their length isn't known until the end.
+   */
+  void setContentLengthUnknown() {
+    this.contentLengthUnknown.set(true);
+    response.get().removeHeaders("Content-Length");
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -737,7 +816,7 @@ class StreamConnection extends HttpURLConnection implements Closeable {
    */
   @Override
   public boolean usingProxy() {
-    ProxyConfig proxy = SettingsManager.settings().proxy();
+    ProxyConfig proxy = settings().proxy();
     return proxy != null && !proxy.directConnection();
   }
 
@@ -80,6 +80,8 @@ class StreamConnectionClient {
       "-----BEGIN CERTIFICATE-----\\s*(.*?)\\s*-----END CERTIFICATE-----", Pattern.DOTALL);
 
   private final HttpCache httpCache;
+  private final MemoryCache memoryCache;
+  private final CacheDaemonClient cacheDaemonClient;
   private final File cacheDir;
   private final CacheConfig cacheConfig;
   private final Registry<ConnectionSocketFactory> registry;
@@ -87,13 +89,21 @@ class StreamConnectionClient {
   private final CloseableHttpClient client;
   private final CloseableHttpClient cachingClient;
   private final FileRemover shutdownHook;
+  private final Settings settings;
 
-  StreamConnectionClient() {
-    File cacheDirTmp = SettingsManager.settings().cacheDir();
+  /**
+   * @param partition
+   *          Name of the session whose cache is kept apart from others in the same cache directory,
+   *          or null for the primary session
+   */
+  StreamConnectionClient(Settings settings, String partition) {
+    this.settings = settings;
+    File cacheDirTmp = settings.cacheDir() == null || partition == null
+        ? settings.cacheDir() : new File(settings.cacheDir(), partition);
     FileRemover shutdownHookTmp = null;
     try {
       cacheDirTmp = cacheDirTmp == null ? Files.createTempDirectory("jbd_webcache_").toFile() : cacheDirTmp;
-      if (SettingsManager.settings().cacheDir() == null) {
+      if (settings.cacheDir() == null) {
         shutdownHookTmp = new FileRemover(cacheDirTmp);
         Runtime.getRuntime().addShutdownHook(shutdownHookTmp);
       } else {
@@ -104,26 +114,41 @@ class StreamConnectionClient {
     }
     shutdownHook = shutdownHookTmp;
     cacheDir = cacheDirTmp;
-    httpCache = new HttpCache(cacheDirTmp);
+    String cacheDaemonPort = System.getProperty(CacheDaemon.PORT_PROPERTY);
+    String cacheDaemonToken = System.getenv(CacheDaemon.TOKEN_ENV);
+    cacheDaemonClient = settings.cache() && settings.cacheDaemon() && cacheDaemonPort != null && cacheDaemonToken != null
+        ? new CacheDaemonClient(Integer.parseInt(cacheDaemonPort), cacheDaemonToken, partition) : null;
+    HttpCache httpCacheTmp = null;
+    if (settings.cache() && cacheDaemonClient == null) {
+      try {
+        httpCacheTmp = HttpCache.open(cacheDirTmp, settings.cacheDirSize(), settings.cacheDirAge(), null);
+      } catch (Throwable t) {
+        Util.handleException(t);
+      }
+    }
+    httpCache = httpCacheTmp;
+    memoryCache = httpCache != null && settings.cacheMemory() > 0
+        ? new MemoryCache(httpCache, settings.cacheMemory(), null, null) : null;
 
     cacheConfig = CacheConfig.custom()
         .setSharedCache(false)
-        .setMaxCacheEntries(SettingsManager.settings().cacheEntries())
-        .setMaxObjectSize(SettingsManager.settings().cacheEntrySize())
+        .setMaxCacheEntries(settings.cacheEntries())
+        .setMaxObjectSize(settings.cacheEntrySize())
         .build();
-    ConnectionSocketFactory sslSocketFactory = SettingsManager.settings()
-        .hostnameVerification() ? new SslSocketFactory(sslContext()) : new SslSocketWithoutHostnameVerificationFactory(sslContext());
+    ConnectionSocketFactory sslSocketFactory = settings
+        .hostnameVerification() ? new SslSocketFactory(sslContext(settings)) : new SslSocketWithoutHostnameVerificationFactory(sslContext(settings));
     registry = RegistryBuilder.<ConnectionSocketFactory> create()
         .register("https", sslSocketFactory)
         .register("http", new SocketFactory())
         .build();
     manager = new PoolingHttpClientConnectionManager(registry);
-    manager.setDefaultMaxPerRoute(SettingsManager.settings().maxRouteConnections());
-    manager.setMaxTotal(SettingsManager.settings().maxConnections());
+    manager.setDefaultMaxPerRoute(settings.maxRouteConnections());
+    manager.setMaxTotal(settings.maxConnections());
     client = clientBuilderHelper(HttpClientBuilder.create(), manager);
     cachingClient = clientBuilderHelper(CachingHttpClientBuilder.create()
         .setCacheConfig(cacheConfig)
-        .setHttpCacheStorage(httpCache),
+        .setHttpCacheStorage(cacheDaemonClient != null ? cacheDaemonClient
+            : memoryCache != null ? memoryCache : httpCache),
         manager);
   }
 
@@ -167,16 +192,33 @@ class StreamConnectionClient {
 
   void shutDown() {
     manager.shutdown();
+    if (memoryCache != null) {
+      memoryCache.log();
+    }
+    if (httpCache != null) {
+      httpCache.close();
+    }
+    if (cacheDaemonClient != null) {
+      cacheDaemonClient.close();
+    }
   }
 
   CloseableHttpResponse execute(HttpRequestBase req, HttpClientContext context)
       throws ClientProtocolException, IOException {
-    return !SettingsManager.settings().cache() || nonCachedMethods.contains(req.getMethod())
-        ? client.execute(req, context) : cachingClient.execute(req, context);
+    if (!settings.cache() || nonCachedMethods.contains(req.getMethod())) {
+      return client.execute(req, context);
+    }
+    try {
+      return cachingClient.execute(req, context);
+    } finally {
+      if (cacheDaemonClient != null) {
+        cacheDaemonClient.release();
+      }
+    }
   }
 
-  private static SSLContext sslContext() {
-    final String property = SettingsManager.settings().ssl();
+  private static SSLContext sslContext(Settings settings) {
+    final String property = settings.ssl();
     if (property != null && !property.isEmpty() && !"null".equals(property)) {
       if ("trustanything".equals(property)) {
         try {
@@ -0,0 +1,89 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.rmi.server.RemoteObjectInvocationHandler;
+import java.rmi.server.RemoteStub;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Times calls made through an RMI stub, recording them in {@link TransportStats#RMI} the same way
+ * {@link FramedClient} records calls over the framed transport. Stubs returned by timed calls are timed too.
+ */
+class TimedRemote implements InvocationHandler, Serializable {
+  private final Object remote;
+
+  private TimedRemote(Object remote) {
+    this.remote = remote;
+  }
+
+  /**
+   * @return A proxy timing calls to the given RMI stub, or the object itself if it's not an RMI stub.
+   */
+  static <T> T wrap(T remote) {
+    if (!isStub(remote)) {
+      return remote;
+    }
+    Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+    for (Class<?> cur = remote.getClass(); cur != null; cur = cur.getSuperclass()) {
+      for (Class<?> i : cur.getInterfaces()) {
+        if (Remote.class.isAssignableFrom(i)) {
+          interfaces.add(i);
+        }
+      }
+    }
+    return (T) Proxy.newProxyInstance(TimedRemote.class.getClassLoader(),
+        interfaces.toArray(new Class<?>[0]), new TimedRemote(remote));
+  }
+
+  private static boolean isStub(Object obj) {
+    return obj instanceof RemoteStub
+        || (obj != null && Proxy.isProxyClass(obj.getClass())
+            && Proxy.getInvocationHandler(obj) instanceof RemoteObjectInvocationHandler);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      if ("equals".equals(method.getName())) {
+        return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+            && Proxy.getInvocationHandler(args[0]) instanceof TimedRemote
+            && remote.equals(((TimedRemote) Proxy.getInvocationHandler(args[0])).remote);
+      }
+      return method.invoke(remote, args);
+    }
+    final long start = System.nanoTime();
+    try {
+      return wrap(method.invoke(remote, args));
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    } finally {
+      TransportStats.RMI.call(System.nanoTime() - start);
+    }
+  }
+}
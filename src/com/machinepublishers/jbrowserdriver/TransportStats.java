@@ -0,0 +1,123 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2017 jBrowserDriver committers
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Point-in-time statistics for calls made from this JVM to child browser processes over one transport,
+ * either RMI or the framed transport. Both are measured the same way, so running the same workload
+ * with the framed transport on and off gives comparable numbers.
+ * 
+ * @see Settings.Builder#framedTransport(boolean)
+ * @see JBrowserDriver#transportStats(boolean)
+ */
+public class TransportStats {
+  static final Counter RMI = new Counter();
+  static final Counter FRAMED = new Counter();
+  private final long calls;
+  private final long averageCallMicros;
+  private final long maxCallMicros;
+  private final long bytesSent;
+  private final long bytesReceived;
+
+  static class Counter {
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong callNanosTotal = new AtomicLong();
+    private final AtomicLong callNanosMax = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    void call(long nanos) {
+      calls.incrementAndGet();
+      callNanosTotal.addAndGet(nanos);
+      callNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    void sent(long bytes) {
+      bytesSent.addAndGet(bytes);
+    }
+
+    void received(long bytes) {
+      bytesReceived.addAndGet(bytes);
+    }
+
+    TransportStats stats() {
+      long callCount = calls.get();
+      return new TransportStats(callCount, callCount == 0 ? 0 : callNanosTotal.get() / callCount / 1000,
+          callNanosMax.get() / 1000, bytesSent.get(), bytesReceived.get());
+    }
+  }
+
+  private TransportStats(long calls, long averageCallMicros, long maxCallMicros, long bytesSent, long bytesReceived) {
+    this.calls = calls;
+    this.averageCallMicros = averageCallMicros;
+    this.maxCallMicros = maxCallMicros;
+    this.bytesSent = bytesSent;
+    this.bytesReceived = bytesReceived;
+  }
+
+  /**
+   * @return Number of calls and lookups completed, including those which threw.
+   */
+  public long calls() {
+    return calls;
+  }
+
+  /**
+   * @return Average microseconds from making a call until its result was returned or thrown.
+   */
+  public long averageCallMicros() {
+    return averageCallMicros;
+  }
+
+  /**
+   * @return Longest microseconds from making a call until its result was returned or thrown.
+   */
+  public long maxCallMicros() {
+    return maxCallMicros;
+  }
+
+  /**
+   * @return Bytes written to child processes, including protocol overhead such as frame headers.
+   */
+  public long bytesSent() {
+    return bytesSent;
+  }
+
+  /**
+   * @return Bytes read from child processes, including protocol overhead such as frame headers.
+   */
+  public long bytesReceived() {
+    return bytesReceived;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder()
+        .append("calls=").append(calls)
+        .append(", averageCallMicros=").append(averageCallMicros)
+        .append(", maxCallMicros=").append(maxCallMicros)
+        .append(", bytesSent=").append(bytesSent)
+        .append(", bytesReceived=").append(bytesReceived)
+        .toString();
+  }
+}
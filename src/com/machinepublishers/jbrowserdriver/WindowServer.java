@@ -26,11 +26,13 @@ import javafx.stage.Stage;
 
 class WindowServer extends RemoteObject implements WindowRemote,
     org.openqa.selenium.WebDriver.Window {
+  private final Session session;
   private final AtomicReference<Stage> stage;
   private final StatusCode statusCode;
 
-  WindowServer(final AtomicReference<Stage> stage, final StatusCode statusCode)
+  WindowServer(final Session session, final AtomicReference<Stage> stage, final StatusCode statusCode)
       throws RemoteException {
+    this.session = session;
     this.stage = stage;
     this.statusCode = statusCode;
   }
@@ -98,8 +100,8 @@ class WindowServer extends RemoteObject implements WindowRemote,
   public void setPosition(org.openqa.selenium.Point point) {
     AppThread.exec(() -> {
       if (!stage.get().isFullScreen()) {
-        int screenWidth = SettingsManager.settings().screenWidth();
-        int screenHeight = SettingsManager.settings().screenHeight();
+        int screenWidth = session.settings().screenWidth();
+        int screenHeight = session.settings().screenHeight();
 
         int width = (int) Math.rint((Double) stage.get().getWidth());
         int height = (int) Math.rint((Double) stage.get().getHeight());
@@ -132,8 +134,8 @@ class WindowServer extends RemoteObject implements WindowRemote,
   public void setSize(org.openqa.selenium.Dimension dimension) {
     AppThread.exec(() -> {
       if (!stage.get().isFullScreen()) {
-        int screenWidth = SettingsManager.settings().screenWidth();
-        int screenHeight = SettingsManager.settings().screenHeight();
+        int screenWidth = session.settings().screenWidth();
+        int screenHeight = session.settings().screenHeight();
 
         int xPos = (int) Math.rint((Double) stage.get().getX());
         int yPos = (int) Math.rint((Double) stage.get().getY());